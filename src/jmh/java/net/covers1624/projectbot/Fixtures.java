@@ -0,0 +1,97 @@
+package net.covers1624.projectbot;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Recorded pages for benchmarks, and helpers to inflate them to stress sizes.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class Fixtures {
+
+    // A JEP in either the Features blockquote or the jeps table.
+    private static final Pattern JEP_LINE = Pattern.compile("^(?:<tr><td>)?(\\d+):");
+    // A release in the Project listing.
+    private static final Pattern VERSION_LINE = Pattern.compile("^<li><a href=\"(\\d+)/\">");
+
+    /**
+     * Load a fixture page.
+     *
+     * @param name The name of the page, under {@code /fixtures/}.
+     * @return The page.
+     */
+    public static String load(String name) {
+        try (InputStream is = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (is == null) throw new IllegalArgumentException("Missing fixture: " + name);
+
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Repeat every JEP on a release page, with new ids.
+     *
+     * @param html   The release page.
+     * @param factor How many times to repeat each JEP, {@code 1} to leave the page as is.
+     * @return The inflated page.
+     */
+    public static String inflateJeps(String html, int factor) {
+        return inflate(html, JEP_LINE, factor, 1000);
+    }
+
+    /**
+     * Repeat every release on the Project listing, with new versions.
+     *
+     * @param html   The Project listing.
+     * @param factor How many times to repeat each release, {@code 1} to leave the page as is.
+     * @return The inflated page.
+     */
+    public static String inflateVersions(String html, int factor) {
+        return inflate(html, VERSION_LINE, factor, 100);
+    }
+
+    /**
+     * Check a hand written scanner extracted exactly what the Jsoup selectors it mirrors do, in the same order.
+     *
+     * @param page    The page, for the error message.
+     * @param scanned The scanner's result, {@code null} if it fell back to Jsoup.
+     * @param parsed  The Jsoup result.
+     * @throws IllegalStateException If they differ.
+     */
+    public static void checkParity(String page, @Nullable Map<String, ?> scanned, Map<String, ?> parsed) {
+        if (scanned == null) throw new IllegalStateException("Scanner fell back to Jsoup for " + page);
+
+        if (!List.copyOf(scanned.entrySet()).equals(List.copyOf(parsed.entrySet()))) {
+            throw new IllegalStateException("Scanner and Jsoup disagree on " + page + ".\nScanned: " + scanned.values() + "\nParsed:  " + parsed.values());
+        }
+    }
+
+    private static String inflate(String html, Pattern pattern, int factor, int stride) {
+        if (factor <= 1) return html;
+
+        StringBuilder sb = new StringBuilder(html.length() * factor);
+        for (String line : html.split("\n")) {
+            sb.append(line).append('\n');
+            Matcher matcher = pattern.matcher(line);
+            if (!matcher.find()) continue;
+
+            String id = matcher.group(1);
+            for (int i = 1; i < factor; i++) {
+                String newId = String.valueOf(Integer.parseInt(id) + i * stride);
+                sb.append(line.replace(id, newId)).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package net.covers1624.projectbot.checker;
+
+import net.covers1624.projectbot.Fixtures;
+import net.covers1624.projectbot.watch.WatchedPage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static net.covers1624.projectbot.OpenJdkProjectBot.JDK_LIST_URL;
+
+/**
+ * Diffing two snapshots, both unchanged and with roughly a tenth of the entries replaced.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiffBenchmark {
+
+    @Param({"1", "50"})
+    public int factor;
+
+    // Snapshot entries, as the checkers store and diff them.
+    private Map<String, String> oldJeps;
+    private Map<String, String> sameJeps;
+    private Map<String, String> newJeps;
+
+    private Map<String, String> oldVersions;
+    private Map<String, String> newVersions;
+
+    @Setup
+    public void setup() {
+        oldJeps = ProjectChecker.toEntries(ProjectChecker.extractJEPs(Fixtures.inflateJeps(Fixtures.load("jdk-21.html"), factor), JDK_LIST_URL));
+        sameJeps = new LinkedHashMap<>(oldJeps);
+        newJeps = new LinkedHashMap<>();
+        int i = 0;
+        for (Map.Entry<String, String> jep : oldJeps.entrySet()) {
+            if (i++ % 10 == 0) {
+                newJeps.put("9" + jep.getKey(), jep.getValue());
+            } else {
+                newJeps.put(jep.getKey(), jep.getValue());
+            }
+        }
+
+        oldVersions = ProjectListChecker.toEntries(ProjectListChecker.extractVersions(Fixtures.inflateVersions(Fixtures.load("jdk-list.html"), factor), JDK_LIST_URL));
+        newVersions = new LinkedHashMap<>();
+        i = 0;
+        for (Map.Entry<String, String> version : oldVersions.entrySet()) {
+            newVersions.put(version.getKey(), i++ % 10 == 0 ? "GA" : version.getValue());
+        }
+    }
+
+    @Benchmark
+    public List<ProjectChecker.JEPChange> diffJEPsUnchanged() {
+        return ProjectChecker.toJEPChanges(WatchedPage.diff(oldJeps, sameJeps));
+    }
+
+    @Benchmark
+    public List<ProjectChecker.JEPChange> diffJEPsChanged() {
+        return ProjectChecker.toJEPChanges(WatchedPage.diff(oldJeps, newJeps));
+    }
+
+    @Benchmark
+    public List<ProjectListChecker.ProjectListChange> diffVersionsChanged() {
+        return ProjectListChecker.toListChanges(WatchedPage.diff(oldVersions, newVersions));
+    }
+}
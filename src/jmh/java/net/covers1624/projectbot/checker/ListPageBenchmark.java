@@ -0,0 +1,45 @@
+package net.covers1624.projectbot.checker;
+
+import net.covers1624.projectbot.Fixtures;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static net.covers1624.projectbot.OpenJdkProjectBot.JDK_LIST_URL;
+
+/**
+ * Parsing the versions out of the Project listing.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListPageBenchmark {
+
+    @Param({"1", "50"})
+    public int factor;
+
+    private String html;
+
+    @Setup
+    public void setup() {
+        html = Fixtures.inflateVersions(Fixtures.load("jdk-list.html"), factor);
+        Fixtures.checkParity("jdk-list.html", scanVersions(), getVersions());
+    }
+
+    @Benchmark
+    public Map<String, ProjectListChecker.ProjectVersion> getVersions() {
+        return ProjectListChecker.getVersions(Jsoup.parse(html, JDK_LIST_URL));
+    }
+
+    @Benchmark
+    public Map<String, ProjectListChecker.ProjectVersion> scanVersions() {
+        return ProjectListChecker.scanVersions(html);
+    }
+}
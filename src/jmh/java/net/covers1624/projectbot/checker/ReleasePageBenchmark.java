@@ -0,0 +1,50 @@
+package net.covers1624.projectbot.checker;
+
+import net.covers1624.projectbot.Fixtures;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static net.covers1624.projectbot.OpenJdkProjectBot.JDK_LIST_URL;
+
+/**
+ * Parsing the JEPs out of a release page.
+ * <p>
+ * {@code jdk-18.html} lists its JEPs as anchors in the Features blockquote,
+ * {@code jdk-21.html} uses the newer jeps table.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReleasePageBenchmark {
+
+    @Param({"jdk-18.html", "jdk-21.html"})
+    public String page;
+    @Param({"1", "50"})
+    public int factor;
+
+    private String html;
+
+    @Setup
+    public void setup() {
+        html = Fixtures.inflateJeps(Fixtures.load(page), factor);
+        Fixtures.checkParity(page, scanJEPs(), getJEPs());
+    }
+
+    @Benchmark
+    public Map<String, ProjectChecker.JEP> getJEPs() {
+        return ProjectChecker.getJEPs(Jsoup.parse(html, JDK_LIST_URL));
+    }
+
+    @Benchmark
+    public Map<String, ProjectChecker.JEP> scanJEPs() {
+        return ProjectChecker.scanJEPs(html);
+    }
+}
@@ -0,0 +1,107 @@
+package net.covers1624.projectbot.discord;
+
+import com.sun.net.httpserver.HttpServer;
+import net.covers1624.projectbot.OpenJdkProjectBot;
+import net.covers1624.projectbot.checker.ChangeBatch;
+import net.covers1624.projectbot.checker.ProjectChecker.JEPChange;
+import net.covers1624.projectbot.checker.ProjectListChecker.ProjectListChange;
+import net.covers1624.projectbot.notify.ChangeFormatter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting, encoding and posting webhook messages for a cycle's changes.
+ * <p>
+ * Messages are posted to a local stand-in for Discord which accepts everything,
+ * so {@link #execute} measures our side of the request rather than the network.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebhookBenchmark {
+
+    private static final String[] DESCRIPTIONS = {
+            "String Templates (Preview)",
+            "Sequenced Collections",
+            "Generational ZGC",
+            "Foreign Function & Memory API (Third Preview)",
+            "Unnamed Classes and Instance Main Methods (Preview)",
+            "Deprecate the Windows 32-bit x86 Port for Removal",
+            "Prepare to Disallow the Dynamic Loading of Agents",
+    };
+
+    // The number of JEP changes per release, and releases in the cycle.
+    @Param({"1", "50"})
+    public int factor;
+
+    private final ChangeFormatter formatter = new ChangeFormatter(OpenJdkProjectBot.JDK_LIST_URL, OpenJdkProjectBot.JEPS_URL);
+
+    private HttpServer server;
+    private String url;
+    private List<ChangeBatch> batches;
+    private List<DiscordWebhook> messages;
+
+    @Setup
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/webhook", exchange -> {
+            try (InputStream is = exchange.getRequestBody()) {
+                is.readAllBytes();
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/webhook";
+
+        List<ProjectListChange> listChanges = new ArrayList<>();
+        Map<String, List<JEPChange>> jepChanges = new LinkedHashMap<>();
+        for (int r = 0; r < factor; r++) {
+            String release = String.valueOf(22 + r);
+            listChanges.add(new ProjectListChange(release, "in development", "Rampdown Phase One"));
+            List<JEPChange> changes = new ArrayList<>();
+            for (int i = 0; i < Math.max(3, factor); i++) {
+                changes.add(new JEPChange(String.valueOf(430 + i), DESCRIPTIONS[i % DESCRIPTIONS.length], i % 4 != 0));
+            }
+            jepChanges.put(release, changes);
+        }
+        batches = List.of(new ChangeBatch(System.currentTimeMillis(), listChanges, jepChanges, List.of()));
+        messages = formatter.format(batches);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public List<DiscordWebhook> format() {
+        return formatter.format(batches);
+    }
+
+    @Benchmark
+    public void encode(Blackhole bh) {
+        for (DiscordWebhook message : messages) {
+            bh.consume(message.encode());
+        }
+    }
+
+    @Benchmark
+    public void execute() throws IOException {
+        for (DiscordWebhook message : messages) {
+            message.execute(url);
+        }
+    }
+}
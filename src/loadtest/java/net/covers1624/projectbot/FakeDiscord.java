@@ -0,0 +1,123 @@
+package net.covers1624.projectbot;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.covers1624.projectbot.http.LocalServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stand-in for Discord's webhook endpoint.
+ * <p>
+ * Each webhook has its own rate limit bucket, allowing {@code limit} messages per {@code windowMs}.
+ * Responses carry Discord's {@code X-RateLimit-*} headers, and messages over the limit are
+ * rejected with a {@code 429} and {@code Retry-After}, just like the real thing.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class FakeDiscord {
+
+    private final HttpServer server;
+    private final int limit;
+    private final long windowMs;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * @param limit    The number of messages each webhook accepts per window.
+     * @param windowMs The rate limit window, in milliseconds.
+     */
+    public FakeDiscord(int limit, long windowMs) throws IOException {
+        this.limit = limit;
+        this.windowMs = windowMs;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("Fake Discord %d")
+                        .setDaemon(true)
+                        .build()
+        ));
+        server.createContext("/api/webhooks/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * @param id The webhook id.
+     * @return The url for the webhook.
+     */
+    public String getUrl(int id) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/webhooks/" + id + "/token";
+    }
+
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                LocalServer.respond(exchange, 405, "application/json", "{\"message\": \"405: Method Not Allowed\", \"code\": 0}");
+                return;
+            }
+            try (InputStream is = exchange.getRequestBody()) {
+                bytes.addAndGet(is.readAllBytes().length);
+            }
+
+            Bucket bucket = buckets.computeIfAbsent(exchange.getRequestURI().getPath(), e -> new Bucket());
+            long now = System.currentTimeMillis();
+            int remaining;
+            long resetAfter;
+            synchronized (bucket) {
+                if (now >= bucket.resetAt) {
+                    bucket.resetAt = now + windowMs;
+                    bucket.remaining = limit;
+                }
+                resetAfter = bucket.resetAt - now;
+                remaining = bucket.remaining > 0 ? --bucket.remaining : -1;
+            }
+            String resetSecs = String.valueOf(resetAfter / 1000D);
+            if (remaining < 0) {
+                rateLimited.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", resetSecs);
+                LocalServer.respond(exchange, 429, "application/json", "{\"message\": \"You are being rate limited.\", \"retry_after\": " + resetSecs + ", \"global\": false}");
+                return;
+            }
+            delivered.incrementAndGet();
+            exchange.getResponseHeaders().set("X-RateLimit-Limit", String.valueOf(limit));
+            exchange.getResponseHeaders().set("X-RateLimit-Remaining", String.valueOf(remaining));
+            exchange.getResponseHeaders().set("X-RateLimit-Reset-After", resetSecs);
+            exchange.sendResponseHeaders(204, -1);
+        }
+    }
+
+    private static class Bucket {
+
+        private long resetAt;
+        private int remaining;
+    }
+}
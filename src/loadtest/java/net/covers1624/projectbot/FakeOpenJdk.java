@@ -0,0 +1,224 @@
+package net.covers1624.projectbot;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.covers1624.projectbot.http.LocalServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A generated stand-in for the parts of openjdk.org the bot reads.
+ * <p>
+ * Serves the JDK Project listing under {@code /projects/jdk/}, a page for every release
+ * under {@code /projects/jdk/<version>}, and the JEP index at {@code /jeps/0}. Pages carry
+ * an {@code ETag} and honour {@code If-None-Match}. Every request is delayed by the configured
+ * latency, and fails with a {@code 503} at the configured rate.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class FakeOpenJdk {
+
+    private static final String[] STATUSES = { "Dra", "Can", "Pro", "Tar", "Int", "Com" };
+    private static final String[] COMPONENTS = { "core/lang", "core/libs", "hotspot/gc", "hotspot/compiler", "tools/javac", "security/libs" };
+
+    private final HttpServer server;
+    private final Random random;
+    private final long latencyMs;
+    private final double failureRate;
+
+    private final List<Release> releases = new ArrayList<>();
+    private final int jepCount;
+    private int nextJep;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+
+    // The rendered pages, keyed by path. Swapped as a whole after each mutation.
+    private volatile Map<String, Page> pages = Map.of();
+
+    /**
+     * @param releases    The number of releases on the listing.
+     * @param jeps        The number of JEPs in the index, spread over the releases.
+     * @param latencyMs   The mean latency of each request, in milliseconds.
+     * @param failureRate The fraction of requests to fail.
+     * @param seed        The seed for the generated content.
+     */
+    public FakeOpenJdk(int releases, int jeps, long latencyMs, double failureRate, long seed) throws IOException {
+        random = new Random(seed);
+        this.latencyMs = latencyMs;
+        this.failureRate = failureRate;
+        jepCount = Math.max(1, jeps);
+
+        int perRelease = Math.max(1, jepCount / Math.max(1, releases));
+        for (int i = 0; i < releases; i++) {
+            Release release = new Release(String.valueOf(i + 1), i == releases - 1 ? "in development" : "GA");
+            for (int j = 0; j < perRelease && nextJep < jepCount; j++) {
+                release.jeps.add(nextJep++);
+            }
+            this.releases.add(release);
+        }
+        render();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("Fake OpenJDK %d")
+                        .setDaemon(true)
+                        .build()
+        ));
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Change some of the releases, as if the site had been edited.
+     * <p>
+     * Each changed release has a JEP removed and another added, and its listing status updated.
+     *
+     * @param fraction The fraction of releases to change.
+     * @return The number of releases changed.
+     */
+    public synchronized int mutate(double fraction) {
+        int count = (int) Math.ceil(releases.size() * fraction);
+        List<Release> shuffled = new ArrayList<>(releases);
+        Collections.shuffle(shuffled, random);
+        for (Release release : shuffled.subList(0, Math.min(count, shuffled.size()))) {
+            if (!release.jeps.isEmpty()) {
+                release.jeps.remove(random.nextInt(release.jeps.size()));
+            }
+            release.jeps.add(nextJep++ % jepCount);
+            release.status = "Rampdown Phase " + (1 + random.nextInt(2));
+        }
+        render();
+        return count;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            ThreadLocalRandom rand = ThreadLocalRandom.current();
+            if (latencyMs > 0) {
+                // Uniform between half and one and a half times the mean.
+                Thread.sleep(latencyMs / 2 + rand.nextLong(latencyMs + 1));
+            }
+            if (rand.nextDouble() < failureRate) {
+                failures.incrementAndGet();
+                LocalServer.respond(exchange, 503, "text/plain", "Service Unavailable");
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            Page page = pages.get(path.endsWith("/") && path.length() > 1 ? path.substring(0, path.length() - 1) : path);
+            if (page == null) {
+                LocalServer.respond(exchange, 404, "text/plain", "Not Found");
+                return;
+            }
+            exchange.getResponseHeaders().set("ETag", page.etag);
+            if (page.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            LocalServer.respond(exchange, 200, "text/html; charset=UTF-8", page.body);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void render() {
+        Map<String, Page> pages = new HashMap<>();
+        StringBuilder listing = new StringBuilder();
+        listing.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head><title>JDK Project</title></head>\n<body>\n");
+        listing.append("<div id=\"main\">\n<h1>JDK Project</h1>\n<h2 id=\"releases\">Releases</h2>\n<ul>\n");
+        for (int i = releases.size() - 1; i >= 0; i--) {
+            Release release = releases.get(i);
+            listing.append("<li><a href=\"").append(release.version).append("/\">").append(release.version).append("</a> (").append(release.status).append(")</li>\n");
+            pages.put("/projects/jdk/" + release.version, page(renderRelease(release)));
+        }
+        listing.append("</ul>\n</div>\n</body>\n</html>\n");
+        pages.put("/projects/jdk", page(listing.toString()));
+        pages.put("/jeps/0", page(renderIndex()));
+        this.pages = pages;
+    }
+
+    private String renderRelease(Release release) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head><title>JDK ").append(release.version).append("</title></head>\n<body>\n");
+        sb.append("<div id=\"main\">\n<h1>JDK ").append(release.version).append("</h1>\n");
+        sb.append("<h2 id=\"Features\">Features</h2>\n<blockquote>\n<table class=\"jeps\">\n<tbody>\n");
+        for (int jep : release.jeps) {
+            sb.append("<tr><td>").append(jep).append(":</td><td><a href=\"/jeps/").append(jep).append("\">").append(title(jep)).append("</a></td></tr>\n");
+        }
+        sb.append("</tbody>\n</table>\n</blockquote>\n</div>\n</body>\n</html>\n");
+        return sb.toString();
+    }
+
+    private String renderIndex() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head><title>JEP 0: JEP Index</title></head>\n<body>\n");
+        sb.append("<table class=\"jeps\">\n");
+        for (int jep = 0; jep < jepCount; jep++) {
+            sb.append("<tr><td>F</td><td>").append(STATUSES[jep % STATUSES.length]).append("</td>");
+            sb.append("<td>").append(jep % 30 + 1).append("</td><td>").append(COMPONENTS[jep % COMPONENTS.length]).append("</td>");
+            sb.append("<td class=\"jep\">").append(jep).append("</td><td><a href=\"").append(jep).append("\">").append(title(jep)).append("</a></td></tr>\n");
+        }
+        sb.append("</table>\n</body>\n</html>\n");
+        return sb.toString();
+    }
+
+    private static String title(int jep) {
+        return "Generated Feature " + jep;
+    }
+
+    @SuppressWarnings("UnstableApiUsage")
+    private static Page page(String html) {
+        byte[] body = html.getBytes(StandardCharsets.UTF_8);
+        return new Page(body, "\"" + Hashing.murmur3_128().hashBytes(body) + "\"");
+    }
+
+    private record Page(byte[] body, String etag) { }
+
+    private static class Release {
+
+        private final String version;
+        private final List<Integer> jeps = new ArrayList<>();
+        private String status;
+
+        private Release(String version, String status) {
+            this.version = version;
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package net.covers1624.projectbot;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs the bot end to end against a {@link FakeOpenJdk} and {@link FakeDiscord}.
+ * <p>
+ * The first cycle runs against an empty cache, every later cycle first changes some of
+ * the releases. Simulated time advances past the longest poll interval between cycles,
+ * so every release is polled each cycle. Once the cycles are done, the outbox is left to
+ * drain. Reports the time taken by each cycle, and the messages delivered.
+ * <p>
+ * Configured with system properties, see {@code ./gradlew loadTest -Ploadtest.releases=500}.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class LoadTest {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    public static void main(String[] args) throws Throwable {
+        int releases = Integer.getInteger("loadtest.releases", 300);
+        int jeps = Integer.getInteger("loadtest.jeps", 3000);
+        int cycles = Integer.getInteger("loadtest.cycles", 5);
+        double churn = Double.parseDouble(System.getProperty("loadtest.churn", "0.05"));
+        long latencyMs = Long.getLong("loadtest.latencyMs", 50);
+        double failureRate = Double.parseDouble(System.getProperty("loadtest.failureRate", "0.02"));
+        int webhooks = Integer.getInteger("loadtest.webhooks", 3);
+        // Discord allows 5 messages every 2 seconds per webhook.
+        int rateLimit = Integer.getInteger("loadtest.rateLimit", 5);
+        long rateWindowMs = Long.getLong("loadtest.rateWindowMs", 2000);
+        long drainTimeoutSecs = Long.getLong("loadtest.drainTimeoutSecs", 600);
+        long seed = Long.getLong("loadtest.seed", 1);
+
+        Path cacheDir = Files.createTempDirectory("projectbot-loadtest");
+        FakeOpenJdk site = new FakeOpenJdk(releases, jeps, latencyMs, failureRate, seed);
+        FakeDiscord discord = new FakeDiscord(rateLimit, rateWindowMs);
+        site.start();
+        discord.start();
+        boolean drained;
+        try {
+            Config config = new Config();
+            config.cacheDir = cacheDir.toString();
+            config.archiveHtml = false;
+            config.jdkListUrl = site.getBaseUrl() + "/projects/jdk/";
+            config.jepsUrl = site.getBaseUrl() + "/jeps/";
+            config.polling.jitter = 0;
+            for (int i = 0; i < webhooks; i++) {
+                config.webhooks.add(discord.getUrl(i));
+            }
+            LOGGER.info("Load testing {} releases, {} JEPs, {}ms latency, {}% failures, {} webhooks.", releases, jeps, latencyMs, failureRate * 100, webhooks);
+
+            OpenJdkProjectBot bot = new OpenJdkProjectBot(config);
+            bot.start();
+
+            long now = System.currentTimeMillis();
+            long step = TimeUnit.MINUTES.toMillis(Math.max(config.polling.maxMinutes, config.polling.listMinutes) + 1);
+            long totalNanos = 0;
+            long maxNanos = 0;
+            for (int cycle = 0; cycle < cycles; cycle++) {
+                int changed = cycle == 0 ? releases : site.mutate(churn);
+                long requests = site.getRequests();
+                long start = System.nanoTime();
+                bot.doUpdate(now);
+                long nanos = System.nanoTime() - start;
+                totalNanos += nanos;
+                maxNanos = Math.max(maxNanos, nanos);
+                LOGGER.info("Cycle {}: {} releases changed, {} requests, took {}ms.", cycle, changed, site.getRequests() - requests, TimeUnit.NANOSECONDS.toMillis(nanos));
+                now += step;
+            }
+
+            long drainStart = System.nanoTime();
+            long drainDeadline = drainStart + TimeUnit.SECONDS.toNanos(drainTimeoutSecs);
+            while (bot.getUndelivered() > 0 && System.nanoTime() - drainDeadline < 0) {
+                Thread.sleep(100);
+            }
+            drained = bot.getUndelivered() == 0;
+            long drainMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - drainStart);
+
+            LOGGER.info("Cycles: {}, mean {}ms, max {}ms.", cycles, TimeUnit.NANOSECONDS.toMillis(totalNanos / Math.max(1, cycles)), TimeUnit.NANOSECONDS.toMillis(maxNanos));
+            LOGGER.info("Upstream: {} requests, {} injected failures, {} not modified.", site.getRequests(), site.getFailures(), site.getNotModified());
+            LOGGER.info("Discord: {} messages delivered ({} KiB), {} rate limited.", discord.getDelivered(), discord.getBytes() / 1024, discord.getRateLimited());
+            if (drained) {
+                LOGGER.info("Outbox drained {}ms after the last cycle.", drainMillis);
+            } else {
+                LOGGER.error("Outbox still has {} undelivered entries after {}s.", bot.getUndelivered(), drainTimeoutSecs);
+            }
+        } finally {
+            site.stop();
+            discord.stop();
+            deleteRecursive(cacheDir);
+        }
+        System.exit(drained ? 0 : 1);
+    }
+
+    private static void deleteRecursive(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package net.covers1624.projectbot;
 
+import org.jetbrains.annotations.Nullable;
+
 import java.util.LinkedList;
 import java.util.List;
 
@@ -9,5 +11,258 @@ import java.util.List;
 public class Config {
 
     public String cacheDir;
+    /**
+     * The maximum number of Project pages to check concurrently.
+     */
+    public int maxConcurrentChecks = 4;
+    /**
+     * The maximum number of webhooks to deliver to concurrently.
+     */
+    public int maxConcurrentDeliveries = 4;
+    /**
+     * If the raw HTML of each changed page should be kept as an audit artifact.
+     * <p>
+     * Diffs always run against the stored snapshots, this is purely for archival.
+     */
+    public boolean archiveHtml = true;
+    /**
+     * Retention policy for archived HTML.
+     */
+    public final Backups backups = new Backups();
+    /**
+     * How often pages are polled.
+     */
+    public final Polling polling = new Polling();
+    /**
+     * Limits on fetching pages.
+     */
+    public final Fetch fetch = new Fetch();
+    /**
+     * How long changes must persist before they are sent.
+     */
+    public final Debounce debounce = new Debounce();
+    /**
+     * The address to serve local endpoints such as {@code /metrics} on.
+     */
+    public String httpHost = "127.0.0.1";
+    /**
+     * The port to serve local endpoints on, {@code 0} to disable.
+     */
+    public int httpPort = 0;
+    /**
+     * The JDK Project page listing each release. Release pages are resolved against it.
+     */
+    public String jdkListUrl = OpenJdkProjectBot.JDK_LIST_URL;
+    /**
+     * The base url for JEPs, the JEP index is {@code 0} under it.
+     */
+    public String jepsUrl = OpenJdkProjectBot.JEPS_URL;
+    /**
+     * When run with {@code --once}, the longest to wait for notifications to be delivered before exiting, in seconds.
+     * <p>
+     * Anything not delivered in time stays in the outbox for the next run.
+     */
+    public int flushTimeoutSeconds = 120;
+    /**
+     * The Atom and JSON Feed files published in the cache directory.
+     */
+    public final Feed feed = new Feed();
+    /**
+     * Extra pages to watch for changes, polled along with the Project listing.
+     */
+    public final List<Watch> watches = new LinkedList<>();
+    /**
+     * Webhooks sent every change.
+     */
     public final List<String> webhooks = new LinkedList<>();
+    /**
+     * Webhooks sent only the changes they are interested in.
+     */
+    public final List<Subscription> subscriptions = new LinkedList<>();
+
+    public static class Subscription {
+
+        /**
+         * The webhook to send matching changes to.
+         * <p>
+         * A webhook may have multiple subscriptions, it is sent everything any of them match.
+         */
+        public String url;
+        /**
+         * The releases to send changes for, {@code null} for every release.
+         */
+        @Nullable
+        public List<String> releases;
+        /**
+         * If changes to the Project listing should be sent.
+         */
+        public boolean listing = true;
+        /**
+         * Only send additions, JEPs being added to a release and new releases on the listing.
+         */
+        public boolean additionsOnly = false;
+        /**
+         * A regex JEP ids must fully match, {@code null} for every JEP.
+         * <p>
+         * Only applies to JEP changes.
+         */
+        @Nullable
+        public String jepPattern;
+        /**
+         * If changes to extra watched pages should be sent. {@link #releases} also matches watch names.
+         */
+        public boolean watches = true;
+    }
+
+    public static class Watch {
+
+        /**
+         * The unique name of the watch, used in notifications and as its cache directory.
+         */
+        public String name;
+        /**
+         * The page to watch.
+         */
+        public String url;
+        /**
+         * A CSS selector matching each entry on the page.
+         */
+        public String items;
+        /**
+         * A CSS selector for the element within each entry to take its key from, {@code null} for the entry itself.
+         * <p>
+         * Entries without a key are ignored, the first entry with each key is used.
+         */
+        @Nullable
+        public String key;
+        /**
+         * The attribute of the key element to use, {@code null} for its text. Prefix with {@code abs:} for absolute urls.
+         */
+        @Nullable
+        public String keyAttr;
+        /**
+         * A CSS selector for the element within each entry to take its value from, {@code null} for the entry itself.
+         */
+        @Nullable
+        public String value;
+        /**
+         * The attribute of the value element to use, {@code null} for its text.
+         */
+        @Nullable
+        public String valueAttr;
+    }
+
+    public static class Feed {
+
+        /**
+         * If {@code feed/atom.xml} and {@code feed/feed.json} should be written.
+         */
+        public boolean enabled = true;
+        /**
+         * The number of most recent update cycles kept in the feeds.
+         */
+        public int maxEntries = 100;
+        /**
+         * The public url the {@code feed} directory is served at, ending in {@code /}.
+         * Only used for the feeds' links to themselves, {@code null} to omit them.
+         */
+        @Nullable
+        public String baseUrl;
+    }
+
+    public static class Backups {
+
+        /**
+         * The maximum number of backups to keep, {@code 0} for unlimited.
+         */
+        public int maxCount = 1000;
+        /**
+         * The maximum age of a backup in days, {@code 0} for unlimited.
+         */
+        public int maxAgeDays = 365;
+        /**
+         * The maximum total size of stored backups in bytes, {@code 0} for unlimited.
+         */
+        public long maxBytes = 256L * 1024 * 1024;
+    }
+
+    public static class Polling {
+
+        /**
+         * How often to look for pages which are due to be polled, in minutes.
+         */
+        public int tickMinutes = 5;
+        /**
+         * How often the Project listing is polled, in minutes.
+         */
+        public int listMinutes = 30;
+        /**
+         * How often a release which just changed is polled, in minutes.
+         */
+        public int minMinutes = 10;
+        /**
+         * The longest a release which isn't changing will be backed off to, in minutes.
+         */
+        public int maxMinutes = 12 * 60;
+        /**
+         * How much a release's interval grows each time it is polled without changes.
+         */
+        public double backoffFactor = 2;
+        /**
+         * The fraction each interval is randomly varied by, so polls don't line up.
+         */
+        public double jitter = 0.2;
+    }
+
+    public static class Debounce {
+
+        /**
+         * The number of consecutive checks a change must be seen in before it is sent, {@code 1} to send changes immediately.
+         */
+        public int observations = 2;
+        /**
+         * How long after a change is first seen it is sent anyway, if not reverted, in minutes. {@code 0} to only go off observations.
+         */
+        public int windowMinutes = 60;
+        /**
+         * How long sent changes are remembered, so the same change is never sent twice in a row, in hours.
+         */
+        public int rememberHours = 7 * 24;
+    }
+
+    public static class Fetch {
+
+        /**
+         * The longest a single update cycle may spend fetching pages, in seconds.
+         * <p>
+         * Pages not fetched in time are retried on a later cycle.
+         */
+        public int cycleBudgetSeconds = 10 * 60;
+        /**
+         * The deadline for a single request, including reading the body, in seconds.
+         */
+        public int requestTimeoutSeconds = 60;
+        /**
+         * How many times a request is retried after a transient failure.
+         */
+        public int maxRetries = 2;
+        /**
+         * How many consecutive failures to a host before its requests are failed fast.
+         */
+        public int breakerThreshold = 5;
+        /**
+         * How long requests to a failing host are failed fast for before trying again, in seconds.
+         * <p>
+         * Doubles each time the host is still failing, up to 30 minutes.
+         */
+        public int breakerOpenSeconds = 60;
+        /**
+         * The maximum number of requests in flight to a single host.
+         */
+        public int maxRequestsPerHost = 4;
+        /**
+         * The minimum time between starting requests to a single host, in milliseconds.
+         */
+        public int hostIntervalMillis = 0;
+    }
 }
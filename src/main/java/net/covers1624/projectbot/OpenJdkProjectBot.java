@@ -1,30 +1,52 @@
 package net.covers1624.projectbot;
 
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
+import net.covers1624.projectbot.checker.ChangeBatch;
+import net.covers1624.projectbot.checker.ChangeDebouncer;
+import net.covers1624.projectbot.checker.JepIndex;
+import net.covers1624.projectbot.checker.JepTracker;
 import net.covers1624.projectbot.checker.ProjectChecker;
 import net.covers1624.projectbot.checker.ProjectListChecker;
-import net.covers1624.projectbot.discord.DiscordWebhook;
-import net.covers1624.projectbot.discord.DiscordWebhook.Embed;
+import net.covers1624.projectbot.discord.WebhookDispatcher;
+import net.covers1624.projectbot.history.ChangeHistory;
+import net.covers1624.projectbot.history.HistoryBackfill;
+import net.covers1624.projectbot.history.HistoryEvent;
+import net.covers1624.projectbot.history.HistoryHandler;
+import net.covers1624.projectbot.http.LocalServer;
+import net.covers1624.projectbot.http.UpstreamClient;
+import net.covers1624.projectbot.live.EventStream;
+import net.covers1624.projectbot.live.LiveState;
+import net.covers1624.projectbot.live.StateHandler;
+import net.covers1624.projectbot.live.StateSnapshot;
+import net.covers1624.projectbot.metrics.DirectorySize;
+import net.covers1624.projectbot.metrics.Metrics;
+import net.covers1624.projectbot.metrics.MetricsHandler;
+import net.covers1624.projectbot.metrics.Timer;
+import net.covers1624.projectbot.notify.ChangeFeed;
+import net.covers1624.projectbot.notify.ChangeFormatter;
+import net.covers1624.projectbot.notify.OutboxSender;
+import net.covers1624.projectbot.notify.RoutingIndex;
+import net.covers1624.projectbot.store.BackupStore;
+import net.covers1624.projectbot.store.Outbox;
+import net.covers1624.projectbot.watch.EntryChange;
+import net.covers1624.projectbot.watch.PageChange;
+import net.covers1624.projectbot.watch.SelectorExtractor;
+import net.covers1624.projectbot.watch.WatchedPage;
 import net.covers1624.quack.gson.JsonUtils;
-import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.time.Duration;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Created by covers1624 on 26/5/22.
@@ -33,27 +55,113 @@ public class OpenJdkProjectBot {
 
     private static final Logger LOGGER = LogManager.getLogger();
     private static final Gson GSON = new Gson();
+    private static final Timer CYCLE_TIMER = Metrics.timer("projectbot_cycle_seconds", "Time spent on each update cycle which polled something.");
 
-    public static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor();
-
-    public static final MediaType APPLICATION_JSON = MediaType.get("application/json");
-    public static final OkHttpClient HTTP_CLIENT = new OkHttpClient.Builder()
-            .readTimeout(Duration.ofMinutes(5))
-            .connectTimeout(Duration.ofMinutes(5))
-            .build();
-
-    public static final DateFormat TIME_FORMAT = new SimpleDateFormat("yyyy-MM-HH-mm-ss");
+    /**
+     * Exit code for {@code --once} runs where some pages could not be checked.
+     */
+    private static final int EXIT_CHECK_FAILED = 2;
+    /**
+     * Exit code for {@code --once} runs which left notifications in the outbox.
+     */
+    private static final int EXIT_UNDELIVERED = 3;
 
     public static final String JDK_LIST_URL = "https://openjdk.java.net/projects/jdk/";
     public static final String JEPS_URL = "https://openjdk.java.net/jeps/";
+    // How the Project listing and watches are named to the ChangeDebouncer, releases go by their version.
+    private static final String LIST_PAGE = "list";
+    private static final String WATCH_PREFIX = "watch:";
+
     public static final String DUKE_ICON = "https://ss.ln-k.net/3949e";
 
     private final Config config;
     private final Path cacheDir;
+    @Nullable
+    private final BackupStore backupStore;
+    private final UpstreamClient upstream;
     private final ProjectListChecker listChecker;
-    private final Map<String, ProjectChecker> projectCheckers = new HashMap<>();
+    private final JepIndex jepIndex;
+    private final JepTracker jepTracker = new JepTracker();
+    private final Map<String, ProjectChecker> projectCheckers = new ConcurrentHashMap<>();
+    // The extra watches by name, in config order.
+    private final Map<String, WatchedPage> watches;
+    private final ExecutorService checkExecutor;
+    private final Outbox outbox;
+    private final OutboxSender sender;
+    private final ChangeHistory history;
+    @Nullable
+    private final ChangeFeed feed;
+    private final PollSchedule schedule;
+    private final ChangeDebouncer debouncer;
+    // Only set while the local endpoints are served.
+    @Nullable
+    private LiveState liveState;
+    @Nullable
+    private EventStream events;
+
+    public OpenJdkProjectBot(Config config) {
+        this.config = config;
+
+        cacheDir = Path.of(config.cacheDir);
+        backupStore = config.archiveHtml ? new BackupStore(cacheDir.resolve("backups"), config.backups) : null;
+        upstream = new UpstreamClient(OpenJdkProjectBot::httpClient, config.fetch);
+        listChecker = new ProjectListChecker(cacheDir.resolve("lists"), config.jdkListUrl, backupStore, upstream);
+        jepIndex = new JepIndex(cacheDir.resolve("jeps"), config.jepsUrl, upstream);
+        checkExecutor = Executors.newFixedThreadPool(
+                Math.max(1, config.maxConcurrentChecks),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("Project Checker %d")
+                        .setDaemon(true)
+                        .build()
+        );
+        Outbox outbox = null;
+        try {
+            outbox = new Outbox(cacheDir.resolve("outbox"));
+        } catch (IOException ex) {
+            LOGGER.error("Unable to load outbox.", ex);
+            System.exit(1);
+        }
+        this.outbox = outbox;
+        ChangeHistory history = null;
+        try {
+            history = new ChangeHistory(cacheDir.resolve("history"));
+        } catch (IOException ex) {
+            LOGGER.error("Unable to load change history.", ex);
+            System.exit(1);
+        }
+        this.history = history;
+        feed = config.feed.enabled ? new ChangeFeed(cacheDir.resolve("feed"), config.feed, config.jdkListUrl, config.jepsUrl) : null;
+        RoutingIndex routing = null;
+        try {
+            routing = RoutingIndex.compile(config.webhooks, config.subscriptions);
+        } catch (IllegalArgumentException ex) {
+            LOGGER.error("Invalid subscriptions.", ex);
+            System.exit(1);
+        }
+        Map<String, WatchedPage> watches = null;
+        try {
+            watches = compileWatches(config.watches);
+        } catch (IllegalArgumentException ex) {
+            LOGGER.error("Invalid watches.", ex);
+            System.exit(1);
+        }
+        this.watches = watches;
+        try {
+            // Before anything is appended, so new webhooks start with the next batch.
+            outbox.addTargets(routing.getTargets());
+        } catch (IOException ex) {
+            LOGGER.error("Unable to save outbox cursors.", ex);
+            System.exit(1);
+        }
+        sender = new OutboxSender(outbox, new WebhookDispatcher(config.maxConcurrentDeliveries), jepIndex, routing, new ChangeFormatter(config.jdkListUrl, config.jepsUrl));
+        schedule = new PollSchedule(cacheDir.resolve("schedule.json"), config.polling);
+        debouncer = new ChangeDebouncer(cacheDir.resolve("pending.json"), config.debounce);
 
-    public OpenJdkProjectBot() {
+        Metrics.gauge("projectbot_cache_dir_bytes", "Total size of the cache directory.", new DirectorySize(cacheDir));
+        Metrics.gauge("projectbot_outbox_entries", "Outbox entries not yet delivered to every webhook.", outbox::size);
+    }
+
+    public static void main(String[] args) throws Throwable {
         Path configFile = Path.of("./config.json");
         if (Files.notExists(configFile)) {
             LOGGER.error("Config file does not exist.");
@@ -66,97 +174,528 @@ public class OpenJdkProjectBot {
             LOGGER.error("Unable to parse config.", ex);
             System.exit(1);
         }
-        this.config = config;
-
-        cacheDir = Path.of(config.cacheDir);
-        listChecker = new ProjectListChecker(cacheDir.resolve("lists"));
+        OpenJdkProjectBot bot = new OpenJdkProjectBot(config);
+        if (Arrays.asList(args).contains("--backfill-history")) {
+            bot.backfillHistory();
+            System.exit(0);
+        }
+        if (Arrays.asList(args).contains("--once")) {
+            System.exit(bot.runOnce());
+        }
+        bot.run();
     }
 
-    public static void main(String[] args) throws Throwable {
-        new OpenJdkProjectBot().run();
+    /**
+     * @return The shared http client, created on first use so runs with nothing to do never load OkHttp.
+     */
+    public static OkHttpClient httpClient() {
+        return HttpClientHolder.CLIENT;
     }
 
     private void run() throws Throwable {
-        EXECUTOR.scheduleAtFixedRate(this::doUpdate, 0, 30, TimeUnit.MINUTES);
+        start();
+        Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(() -> doUpdate(System.currentTimeMillis()), 0, Math.max(1, config.polling.tickMinutes), TimeUnit.MINUTES);
+    }
+
+    /**
+     * Run a single update cycle, then wait for pending notifications to be delivered.
+     *
+     * @return The exit code.
+     */
+    int runOnce() throws InterruptedException {
+        boolean checked = doUpdate(System.currentTimeMillis());
+        if (!sender.flush(config.flushTimeoutSeconds, TimeUnit.SECONDS)) {
+            LOGGER.error("{} outbox entries not delivered, they will be retried next run.", outbox.size());
+            return EXIT_UNDELIVERED;
+        }
+        return checked ? 0 : EXIT_CHECK_FAILED;
     }
 
-    private void doUpdate() {
-        LOGGER.info("Running update..");
+    /**
+     * Rebuild the change history from the archived pages.
+     */
+    private void backfillHistory() throws IOException, InterruptedException {
+        new HistoryBackfill(cacheDir, backupStore, config.jdkListUrl, history)
+                .run(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Start the local endpoints and outbox delivery.
+     */
+    void start() throws IOException {
+        if (config.httpPort != 0) {
+            liveState = new LiveState();
+            events = new EventStream();
+            publishState(System.currentTimeMillis());
+            new LocalServer(config.httpHost, config.httpPort)
+                    .addHandler("/metrics", new MetricsHandler())
+                    .addHandler("/history", new HistoryHandler(history))
+                    .addHandler("/state", new StateHandler(liveState))
+                    .addStreamHandler("/events", events)
+                    .start();
+        }
+        sender.start();
+    }
+
+    /**
+     * @return The number of outbox entries not yet delivered to every webhook.
+     */
+    int getUndelivered() {
+        return outbox.size();
+    }
+
+    /**
+     * Run a single update cycle.
+     *
+     * @param now The time of the cycle, in epoch milliseconds.
+     * @return If every page due was checked and saved.
+     */
+    boolean doUpdate(long now) {
+        boolean success = true;
+        upstream.beginCycle();
         try {
-            Date currTime = new Date();
+            Date currTime = new Date(now);
 
-            ProjectListChecker.Result listResult = listChecker.checkProjectList(currTime);
+            // The listing keeps its own cadence, between polls we go off the last snapshot.
+            ProjectListChecker.Result listResult = null;
+            boolean listDue = schedule.isListDue(now);
+            boolean listChecked = false;
+            if (listDue) {
+                try {
+                    listResult = listChecker.checkProjectList(currTime);
+                    schedule.recordListPoll(now);
+                    listChecked = true;
+                } catch (IOException ex) {
+                    // Carry on with the releases we already know about, the listing is retried next tick.
+                    LOGGER.error("Error checking Project list for updates.", ex);
+                    success = false;
+                }
+            }
+            if (listResult == null) {
+                listResult = new ProjectListChecker.Result(List.of(), listChecker.getVersions());
+            }
+            if (!listResult.changes().isEmpty()) {
+                LOGGER.info("Detected Project list changes.");
+                // A release changing on the listing is likely to have other changes soon.
+                for (ProjectListChecker.ProjectListChange change : listResult.changes()) {
+                    schedule.expedite(change.version());
+                }
+            }
             // Remove all old project checkers.
-            projectCheckers.keySet().removeAll(Sets.difference(projectCheckers.keySet(), listResult.versions()));
-
-            sendProjectListChanges(listResult);
+            for (String version : Set.copyOf(Sets.difference(projectCheckers.keySet(), listResult.versions()))) {
+                projectCheckers.remove(version);
+                jepTracker.remove(version);
+                Metrics.removeLabel("page", version);
+            }
+            schedule.retain(listResult.versions());
+            debouncer.retain(debouncedPages(listResult.versions()));
 
+            List<String> due = new ArrayList<>();
             for (String version : listResult.versions()) {
-                ProjectChecker projectChecker = projectCheckers.computeIfAbsent(version, e -> new ProjectChecker(cacheDir.resolve(e), e));
-                ProjectChecker.Result projectResult = projectChecker.checkProject(currTime);
-                sendProjectChanges(version, projectResult);
+                if (schedule.isDue(version, now)) {
+                    due.add(version);
+                }
+            }
+            // Pending changes which have stood long enough are confirmed even if their page isn't due.
+            if (due.isEmpty() && !listDue && !debouncer.hasExpired(now)) {
+                LOGGER.debug("Nothing due.");
+                return true;
+            }
+            LOGGER.info("Running update for {}..", due);
+            long start = System.nanoTime();
+
+            Map<String, List<ProjectChecker.JEPChange>> jepChanges = new HashMap<>();
+            List<ProjectChecker> checked = new ArrayList<>();
+            success &= checkProjects(due, currTime, now, jepChanges, checked);
+            List<PageChange> pageChanges = new ArrayList<>();
+            List<WatchedPage> checkedWatches = new ArrayList<>();
+            if (listDue && !watches.isEmpty()) {
+                success &= checkWatches(currTime, pageChanges, checkedWatches);
+            }
+
+            // A retargeted JEP is a removal on one release and an addition on another. If the other
+            // side wasn't due, check it now so the two are reported together as a move.
+            if (!jepChanges.isEmpty()) {
+                Set<String> counterparts = findCounterparts(jepChanges, listResult.versions());
+                due.forEach(counterparts::remove);
+                if (!counterparts.isEmpty()) {
+                    LOGGER.info("Checking {} for JEPs moved to or from {}.", counterparts, jepChanges.keySet());
+                    success &= checkProjects(counterparts, currTime, now, jepChanges, checked);
+                }
+            }
+            Set<String> changed = Set.copyOf(jepChanges.keySet());
+
+            // Only send changes which have held, a page briefly rendering partially shouldn't flood every channel.
+            List<ChangeDebouncer.Change> confirmed = debouncer.observe(
+                    now,
+                    observedPages(listChecked, checked, checkedWatches),
+                    toDebounced(now, listResult.changes(), jepChanges, pageChanges)
+            );
+            ChangeBatch batch = toBatch(now, confirmed, listResult.versions());
+            if (!batch.jepMoves().isEmpty()) {
+                LOGGER.info("Detected {} JEPs moved between releases.", batch.jepMoves().size());
+            }
+
+            // Keep JEP metadata for notifications fresh. Changed JEPs have likely changed status too.
+            if (listDue || !changed.isEmpty()) {
+                try {
+                    jepIndex.refresh();
+                } catch (IOException ex) {
+                    LOGGER.warn("Failed to refresh JEP index.", ex);
+                }
             }
 
+            // Changes must be durable before any snapshot moves past them.
+            if (!batch.isEmpty()) {
+                outbox.append(batch);
+                debouncer.recordSent(now, confirmed);
+                try {
+                    history.append(toHistory(confirmed, listResult.versions()));
+                } catch (IOException ex) {
+                    // Only the history misses out, the changes are still delivered.
+                    LOGGER.error("Error recording change history.", ex);
+                }
+                if (feed != null) {
+                    try {
+                        feed.append(batch);
+                    } catch (IOException ex) {
+                        LOGGER.error("Error writing change feeds.", ex);
+                    }
+                }
+                if (events != null) {
+                    events.publish(batch);
+                }
+            }
+            // So are the changes still pending.
+            debouncer.save();
+            try {
+                listChecker.commit();
+            } catch (IOException ex) {
+                LOGGER.error("Error saving snapshot for Project list.", ex);
+                success = false;
+            }
+            for (ProjectChecker projectChecker : checked) {
+                try {
+                    projectChecker.commit();
+                    jepTracker.update(projectChecker.getVersion(), projectChecker.getJepIds());
+                } catch (IOException ex) {
+                    LOGGER.error("Error saving snapshot for Project {}.", projectChecker.getVersion(), ex);
+                    success = false;
+                }
+                schedule.recordPoll(projectChecker.getVersion(), now, changed.contains(projectChecker.getVersion()));
+            }
+            for (WatchedPage watch : checkedWatches) {
+                try {
+                    watch.commit();
+                } catch (IOException ex) {
+                    LOGGER.error("Error saving snapshot for {}.", watch.getName(), ex);
+                    success = false;
+                }
+            }
+            if (!batch.isEmpty()) {
+                sender.wake();
+            }
+            schedule.save();
+            try {
+                publishState(now);
+            } catch (IOException ex) {
+                // Readers keep the previous snapshot.
+                LOGGER.error("Error publishing live state.", ex);
+            }
+
+            CYCLE_TIMER.recordSince(start);
             LOGGER.info("Update check done.");
+            return success;
         } catch (Throwable ex) {
             LOGGER.error("Error checking for updates.", ex);
+            return false;
+        } finally {
+            upstream.endCycle();
+        }
+    }
+
+    // Checks the given releases concurrently, adding their changes and the checkers which succeeded.
+    private boolean checkProjects(Collection<String> versions, Date currTime, long now, Map<String, List<ProjectChecker.JEPChange>> jepChanges, List<ProjectChecker> checked) {
+        boolean success = true;
+        Map<ProjectChecker, CompletableFuture<ProjectChecker.Result>> projectResults = new LinkedHashMap<>();
+        for (String version : versions) {
+            ProjectChecker projectChecker = getChecker(version);
+            projectResults.put(projectChecker, CompletableFuture.supplyAsync(() -> {
+                try {
+                    return projectChecker.checkProject(currTime);
+                } catch (IOException ex) {
+                    throw new CompletionException(ex);
+                }
+            }, checkExecutor));
+        }
+
+        try {
+            for (Map.Entry<ProjectChecker, CompletableFuture<ProjectChecker.Result>> entry : projectResults.entrySet()) {
+                ProjectChecker projectChecker = entry.getKey();
+                ProjectChecker.Result projectResult;
+                try {
+                    // Whatever hasn't finished by the end of the budget is left for the next tick.
+                    projectResult = entry.getValue().get(upstream.getRemainingNanos(), TimeUnit.NANOSECONDS);
+                } catch (ExecutionException ex) {
+                    LOGGER.error("Error checking Project {} for updates.", projectChecker.getVersion(), ex.getCause());
+                    schedule.recordFailure(projectChecker.getVersion(), now);
+                    success = false;
+                    continue;
+                } catch (TimeoutException ex) {
+                    LOGGER.error("Timed out checking Project {} for updates.", projectChecker.getVersion());
+                    // Cancel anything still in flight, so the remaining checks finish promptly.
+                    upstream.expireCycle();
+                    schedule.recordFailure(projectChecker.getVersion(), now);
+                    success = false;
+                    continue;
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    upstream.expireCycle();
+                    return false;
+                }
+                checked.add(projectChecker);
+                if (!projectResult.jepChanges().isEmpty()) {
+                    LOGGER.info("Detected JEP changes for Project {}", projectChecker.getVersion());
+                    jepChanges.put(projectChecker.getVersion(), projectResult.jepChanges());
+                }
+            }
+        } finally {
+            // Nothing may still be checking a page once the cycle is over, it would race the next check of it.
+            awaitAll(projectResults.values());
+        }
+        return success;
+    }
+
+    // Checks every extra watch concurrently, adding their changes and the pages which succeeded.
+    private boolean checkWatches(Date currTime, List<PageChange> pageChanges, List<WatchedPage> checked) {
+        boolean success = true;
+        Map<String, CompletableFuture<WatchedPage.Update>> results = new LinkedHashMap<>();
+        watches.forEach((name, watch) -> results.put(name, CompletableFuture.supplyAsync(() -> {
+            try {
+                // The first snapshot is only recorded, a new watch shouldn't report everything on the page.
+                boolean first = !watch.hasSnapshot();
+                WatchedPage.Update update = watch.check(currTime);
+                return first ? null : update;
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }, checkExecutor)));
+
+        try {
+            for (Map.Entry<String, CompletableFuture<WatchedPage.Update>> entry : results.entrySet()) {
+                String name = entry.getKey();
+                WatchedPage watch = watches.get(name);
+                WatchedPage.Update update;
+                try {
+                    update = entry.getValue().get(upstream.getRemainingNanos(), TimeUnit.NANOSECONDS);
+                } catch (ExecutionException ex) {
+                    LOGGER.error("Error checking watch {} for updates.", name, ex.getCause());
+                    success = false;
+                    continue;
+                } catch (TimeoutException ex) {
+                    LOGGER.error("Timed out checking watch {} for updates.", name);
+                    upstream.expireCycle();
+                    success = false;
+                    continue;
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    upstream.expireCycle();
+                    return false;
+                }
+                checked.add(watch);
+                if (update != null && !update.changes().isEmpty()) {
+                    LOGGER.info("Detected changes to watch {}.", name);
+                    pageChanges.add(new PageChange(name, watch.getUrl(), update.changes()));
+                }
+            }
+        } finally {
+            // Nothing may still be checking a page once the cycle is over, it would race the next check of it.
+            awaitAll(results.values());
+        }
+        return success;
+    }
+
+    // Waits for every future to finish, however it finishes.
+    private static void awaitAll(Collection<? extends CompletableFuture<?>> futures) {
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .exceptionally(e -> null)
+                .join();
+    }
+
+    // The pages successfully checked this cycle, as named to the ChangeDebouncer.
+    private static Set<String> observedPages(boolean listChecked, List<ProjectChecker> checked, List<WatchedPage> checkedWatches) {
+        Set<String> observed = new HashSet<>();
+        if (listChecked) {
+            observed.add(LIST_PAGE);
+        }
+        for (ProjectChecker checker : checked) {
+            observed.add(checker.getVersion());
+        }
+        for (WatchedPage watch : checkedWatches) {
+            observed.add(watch.getName());
+        }
+        return observed;
+    }
+
+    private static List<ChangeDebouncer.Change> toDebounced(long now, List<ProjectListChecker.ProjectListChange> listChanges, Map<String, List<ProjectChecker.JEPChange>> jepChanges, List<PageChange> pageChanges) {
+        List<ChangeDebouncer.Change> changes = new ArrayList<>();
+        for (ProjectListChecker.ProjectListChange change : listChanges) {
+            changes.add(new ChangeDebouncer.Change(LIST_PAGE, change.version(), change.from(), change.to(), now));
+        }
+        jepChanges.forEach((version, jeps) -> {
+            for (ProjectChecker.JEPChange change : jeps) {
+                changes.add(new ChangeDebouncer.Change(version, change.id(), change.addition() ? null : change.desc(), change.addition() ? change.desc() : null, now));
+            }
+        });
+        for (PageChange pageChange : pageChanges) {
+            for (EntryChange change : pageChange.changes()) {
+                changes.add(new ChangeDebouncer.Change(WATCH_PREFIX + pageChange.page(), change.key(), change.from(), change.to(), now));
+            }
         }
+        return changes;
     }
 
-    private void sendProjectListChanges(ProjectListChecker.Result result) throws IOException {
-        if (result.changes().isEmpty()) {
-            return;
+    // Rebuild the confirmed changes into a batch, pairing up moved JEPs.
+    private ChangeBatch toBatch(long now, List<ChangeDebouncer.Change> confirmed, Set<String> versions) {
+        List<ProjectListChecker.ProjectListChange> listChanges = new ArrayList<>();
+        Map<String, List<ProjectChecker.JEPChange>> jepChanges = new HashMap<>();
+        Map<String, List<EntryChange>> entryChanges = new HashMap<>();
+        for (ChangeDebouncer.Change change : confirmed) {
+            if (change.page().equals(LIST_PAGE)) {
+                listChanges.add(new ProjectListChecker.ProjectListChange(change.key(), change.from(), change.to()));
+            } else if (change.page().startsWith(WATCH_PREFIX)) {
+                entryChanges.computeIfAbsent(change.page().substring(WATCH_PREFIX.length()), e -> new ArrayList<>())
+                        .add(new EntryChange(change.key(), change.from(), change.to()));
+            } else if (change.from() == null || change.to() == null) {
+                // A JEP removed and re-added under a new title nets out to a retitle, which are ignored.
+                boolean addition = change.from() == null;
+                jepChanges.computeIfAbsent(change.page(), e -> new ArrayList<>())
+                        .add(new ProjectChecker.JEPChange(change.key(), addition ? change.to() : change.from(), addition));
+            }
         }
+        List<PageChange> pageChanges = new ArrayList<>();
+        watches.forEach((name, watch) -> {
+            List<EntryChange> changes = entryChanges.get(name);
+            if (changes != null) {
+                pageChanges.add(new PageChange(name, watch.getUrl(), changes));
+            }
+        });
+
+        JepTracker.Moves moves = JepTracker.detectMoves(inListingOrder(jepChanges, versions));
+        return new ChangeBatch(now, listChanges, moves.changes(), moves.moves(), pageChanges);
+    }
 
-        LOGGER.info("Detected Project list changes.");
-        StringBuilder desc = new StringBuilder();
-        for (ProjectListChecker.ProjectListChange change : result.changes()) {
-            desc.append("- Release [").append(change.version()).append("](").append(JDK_LIST_URL).append(change.version()).append(") ");
-            desc.append(change.from() == null ? "(none)" : "`" + change.from() + "`");
-            desc.append(" -> ");
-            desc.append(change.to() == null ? "(none)" : "`" + change.to() + "`");
-            desc.append("\n");
+    // History records each change when it was first seen, as page backups do, not when it was confirmed.
+    // Backfilling from the backups then finds the same events.
+    private List<HistoryEvent> toHistory(List<ChangeDebouncer.Change> confirmed, Set<String> versions) {
+        Map<Long, List<ChangeDebouncer.Change>> byTime = new TreeMap<>();
+        for (ChangeDebouncer.Change change : confirmed) {
+            byTime.computeIfAbsent(change.time(), e -> new ArrayList<>()).add(change);
         }
-        for (String webhook : config.webhooks) {
-            new DiscordWebhook(webhook)
-                    .setUsername("JDK Updates")
-                    .setAvatarUrl(DUKE_ICON)
-                    .addEmbed(new Embed()
-                            .setTitle("JDK Project Listing")
-                            .setUrl(JDK_LIST_URL)
-                            .setDescription("The following Project versions have changed:\n" + desc.toString().trim())
-                    )
-                    .execute();
+        List<HistoryEvent> events = new ArrayList<>();
+        byTime.forEach((time, changes) -> events.addAll(HistoryEvent.fromBatch(toBatch(time, changes, versions))));
+        return events;
+    }
+
+    // Every page which can have pending changes, as named to the ChangeDebouncer.
+    private Set<String> debouncedPages(Set<String> versions) {
+        Set<String> pages = new HashSet<>(versions);
+        pages.add(LIST_PAGE);
+        for (WatchedPage watch : watches.values()) {
+            pages.add(watch.getName());
         }
+        return pages;
     }
 
-    private void sendProjectChanges(String version, ProjectChecker.Result result) throws IOException {
-        if (result.jepChanges().isEmpty()) {
-            return;
+    // The releases changed JEPs may have moved from or to.
+    private Set<String> findCounterparts(Map<String, List<ProjectChecker.JEPChange>> jepChanges, Set<String> versions) {
+        // The tracker is only needed once something changes, fill in whatever it's missing.
+        for (String version : versions) {
+            if (jepTracker.isTracking(version)) continue;
+
+            try {
+                jepTracker.update(version, getChecker(version).getJepIds());
+            } catch (IOException ex) {
+                LOGGER.warn("Failed to load snapshot for Project {}, moves to or from it won't be detected.", version, ex);
+            }
         }
 
-        LOGGER.info("Detected JEP changes for Project {}", version);
+        Set<String> counterparts = new HashSet<>();
+        for (List<ProjectChecker.JEPChange> changes : jepChanges.values()) {
+            for (ProjectChecker.JEPChange change : changes) {
+                if (change.addition()) {
+                    // Where it was before.
+                    counterparts.addAll(jepTracker.getReleases(change.id()));
+                } else {
+                    // Where the JEP index says it's headed, if anywhere.
+                    JepIndex.JepInfo info = jepIndex.get(change.id());
+                    if (info != null && info.release != null) {
+                        counterparts.add(info.release);
+                    }
+                }
+            }
+        }
 
-        StringBuilder desc = new StringBuilder();
-        for (ProjectChecker.JEPChange change : result.jepChanges()) {
-            if (change.addition()) {
-                desc.append("Added: ");
-            } else {
-                desc.append("Removed: ");
+        Set<String> ordered = new LinkedHashSet<>();
+        for (String version : versions) {
+            if (counterparts.contains(version) && !jepChanges.containsKey(version)) {
+                ordered.add(version);
             }
-            desc.append("[").append(change.id()).append("](").append(JEPS_URL).append(change.id()).append(") - ").append(change.desc());
-            desc.append("\n");
         }
-        for (String webhook : config.webhooks) {
-            new DiscordWebhook(webhook)
-                    .setUsername("JEP Updates for Release " + version)
-                    .setAvatarUrl(DUKE_ICON)
-                    .addEmbed(new Embed()
-                            .setTitle("JEP Changes")
-                            .setUrl(JDK_LIST_URL)
-                            .setDescription("The following JEPs have changed:\n" + desc.toString().trim())
-                    )
-                    .execute();
+        return ordered;
+    }
+
+    // Swap in a snapshot of the committed state of every page.
+    private void publishState(long now) throws IOException {
+        if (liveState == null) return;
+
+        Map<String, StateSnapshot.Release> releases = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : listChecker.getReleases().entrySet()) {
+            releases.put(entry.getKey(), new StateSnapshot.Release(entry.getValue(), getChecker(entry.getKey()).getJeps()));
+        }
+        Map<String, Map<String, String>> watchEntries = new LinkedHashMap<>();
+        for (Map.Entry<String, WatchedPage> entry : watches.entrySet()) {
+            watchEntries.put(entry.getKey(), entry.getValue().getEntries());
         }
+        liveState.publish(new StateSnapshot(now, Collections.unmodifiableMap(releases), Collections.unmodifiableMap(watchEntries)));
+    }
+
+    private ProjectChecker getChecker(String version) {
+        return projectCheckers.computeIfAbsent(version, e -> new ProjectChecker(cacheDir.resolve(e), e, config.jdkListUrl + e, backupStore, upstream));
+    }
+
+    private Map<String, WatchedPage> compileWatches(List<Config.Watch> configs) {
+        Map<String, WatchedPage> watches = new LinkedHashMap<>();
+        for (Config.Watch watch : configs) {
+            if (watch.name == null || !watch.name.matches("[A-Za-z0-9._-]+")) {
+                throw new IllegalArgumentException("Watch names must be letters, digits, '.', '_' or '-'. Got: " + watch.name);
+            }
+            if (watch.url == null) throw new IllegalArgumentException("Watch " + watch.name + " is missing a url.");
+            if (watches.containsKey(watch.name)) throw new IllegalArgumentException("Duplicate watch " + watch.name);
+
+            // Prefixed, so metrics can't collide with a release.
+            watches.put(watch.name, new WatchedPage(cacheDir.resolve("watches/" + watch.name), WATCH_PREFIX + watch.name, watch.url, SelectorExtractor.compile(watch), null, upstream));
+        }
+        return watches;
+    }
+
+    private static <T> Map<String, T> inListingOrder(Map<String, T> byVersion, Set<String> versions) {
+        Map<String, T> ordered = new LinkedHashMap<>();
+        for (String version : versions) {
+            T value = byVersion.get(version);
+            if (value != null) {
+                ordered.put(version, value);
+            }
+        }
+        return ordered;
+    }
+
+    // Holds the client, so OkHttp is only loaded once something is fetched or sent.
+    private static class HttpClientHolder {
+
+        private static final OkHttpClient CLIENT = new OkHttpClient.Builder()
+                .readTimeout(Duration.ofMinutes(1))
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
     }
 }
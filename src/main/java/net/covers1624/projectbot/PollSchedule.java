@@ -0,0 +1,190 @@
+package net.covers1624.projectbot;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import net.covers1624.projectbot.util.FileUtils;
+import net.covers1624.quack.gson.JsonUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks when each release page is next due to be polled.
+ * <p>
+ * A release which changed is polled again after {@link Config.Polling#minMinutes},
+ * each poll without changes grows its interval by {@link Config.Polling#backoffFactor}
+ * up to {@link Config.Polling#maxMinutes}. Every interval is jittered so polls spread out.
+ * The schedule is persisted, so restarts don't reset the backoff.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class PollSchedule {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new Gson();
+
+    private final Path file;
+    private final Config.Polling polling;
+    private final State state;
+
+    public PollSchedule(Path file, Config.Polling polling) {
+        this.file = file;
+        this.polling = polling;
+        state = loadState(file);
+    }
+
+    /**
+     * @param page The page.
+     * @param now  The current time, in epoch milliseconds.
+     * @return If the page should be polled now. Pages never polled are always due.
+     */
+    public synchronized boolean isDue(String page, long now) {
+        Entry entry = state.pages.get(page);
+        return entry == null || now >= entry.nextPoll;
+    }
+
+    /**
+     * Record a successful poll of the given page.
+     *
+     * @param page    The page.
+     * @param now     The time of the poll, in epoch milliseconds.
+     * @param changed If the page had changed.
+     */
+    public synchronized void recordPoll(String page, long now, boolean changed) {
+        Entry entry = getEntry(page);
+        if (changed) {
+            entry.interval = minInterval();
+            entry.lastChange = now;
+        } else {
+            entry.interval = Math.min(maxInterval(), (long) (entry.interval * Math.max(1, polling.backoffFactor)));
+        }
+        entry.nextPoll = now + jitter(entry.interval);
+    }
+
+    /**
+     * @param now The current time, in epoch milliseconds.
+     * @return If the Project listing should be polled now.
+     */
+    public synchronized boolean isListDue(long now) {
+        return now >= state.nextListPoll;
+    }
+
+    /**
+     * Record a successful poll of the Project listing, it keeps its own fixed cadence.
+     *
+     * @param now The time of the poll, in epoch milliseconds.
+     */
+    public synchronized void recordListPoll(long now) {
+        state.nextListPoll = now + jitter(TimeUnit.MINUTES.toMillis(polling.listMinutes));
+    }
+
+    /**
+     * Record a failed poll of the given page. It is retried soon, without changing its interval.
+     *
+     * @param page The page.
+     * @param now  The time of the poll, in epoch milliseconds.
+     */
+    public synchronized void recordFailure(String page, long now) {
+        getEntry(page).nextPoll = now + jitter(minInterval());
+    }
+
+    /**
+     * Make the given page due immediately, and poll it at the fastest rate again.
+     *
+     * @param page The page.
+     */
+    public synchronized void expedite(String page) {
+        Entry entry = getEntry(page);
+        entry.interval = minInterval();
+        entry.nextPoll = 0;
+    }
+
+    /**
+     * Forget about every page not in the given collection.
+     *
+     * @param pages The pages to keep.
+     */
+    public synchronized void retain(Collection<String> pages) {
+        state.pages.keySet().retainAll(pages);
+    }
+
+    public synchronized void save() throws IOException {
+        FileUtils.writeJsonAtomic(GSON, file, state);
+    }
+
+    /**
+     * Randomly vary the given interval by {@link Config.Polling#jitter}.
+     *
+     * @param interval The interval, in milliseconds.
+     * @return The jittered interval, in milliseconds.
+     */
+    public long jitter(long interval) {
+        double jitter = Math.max(0, Math.min(1, polling.jitter));
+        if (jitter == 0) return interval;
+
+        return (long) (interval * (1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter)));
+    }
+
+    private Entry getEntry(String page) {
+        return state.pages.computeIfAbsent(page, e -> {
+            Entry entry = new Entry();
+            entry.interval = minInterval();
+            return entry;
+        });
+    }
+
+    private long minInterval() {
+        return TimeUnit.MINUTES.toMillis(Math.max(1, polling.minMinutes));
+    }
+
+    private long maxInterval() {
+        return Math.max(minInterval(), TimeUnit.MINUTES.toMillis(polling.maxMinutes));
+    }
+
+    private static State loadState(Path file) {
+        if (Files.exists(file)) {
+            try {
+                State state = JsonUtils.parse(GSON, file, State.class);
+                if (state != null) {
+                    return state;
+                }
+            } catch (IOException | JsonParseException ex) {
+                LOGGER.warn("Failed to read poll schedule {}. Starting fresh.", file, ex);
+            }
+        }
+        return new State();
+    }
+
+    private static class State {
+
+        public Map<String, Entry> pages = new HashMap<>();
+        /**
+         * When the Project listing is next due, in epoch milliseconds.
+         */
+        public long nextListPoll;
+    }
+
+    private static class Entry {
+
+        /**
+         * The current poll interval, in milliseconds.
+         */
+        public long interval;
+        /**
+         * When the page is next due, in epoch milliseconds.
+         */
+        public long nextPoll;
+        /**
+         * When the page last changed, in epoch milliseconds.
+         */
+        public long lastChange;
+    }
+}
@@ -0,0 +1,249 @@
+package net.covers1624.projectbot.checker;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import net.covers1624.projectbot.checker.JepTracker.JEPMove;
+import net.covers1624.projectbot.checker.ProjectChecker.JEPChange;
+import net.covers1624.projectbot.checker.ProjectListChecker.ProjectListChange;
+import net.covers1624.projectbot.watch.EntryChange;
+import net.covers1624.projectbot.watch.PageChange;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All the changes detected during a single update cycle.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ *
+ * @param time        The time of the update cycle, in epoch milliseconds.
+ * @param listChanges The Project listing changes.
+ * @param jepChanges  The JEP changes for each release, in listing order.
+ * @param jepMoves    JEPs moved between releases.
+ * @param pageChanges Changes to the extra watched pages, in config order.
+ */
+public record ChangeBatch(long time, List<ProjectListChange> listChanges, Map<String, List<JEPChange>> jepChanges, List<JEPMove> jepMoves, List<PageChange> pageChanges) {
+
+    public ChangeBatch(long time, List<ProjectListChange> listChanges, Map<String, List<JEPChange>> jepChanges, List<JEPMove> jepMoves) {
+        this(time, listChanges, jepChanges, jepMoves, List.of());
+    }
+
+    /**
+     * @return If this batch contains no changes.
+     */
+    public boolean isEmpty() {
+        if (!listChanges.isEmpty() || !jepMoves.isEmpty() || !pageChanges.isEmpty()) return false;
+
+        for (List<JEPChange> changes : jepChanges.values()) {
+            if (!changes.isEmpty()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gson adapter, records can't be deserialized reflectively.
+     */
+    public static class Adapter extends TypeAdapter<ChangeBatch> {
+
+        @Override
+        public void write(JsonWriter out, ChangeBatch batch) throws IOException {
+            out.beginObject();
+            out.name("time").value(batch.time);
+            out.name("list").beginArray();
+            for (ProjectListChange change : batch.listChanges) {
+                out.beginObject();
+                out.name("version").value(change.version());
+                out.name("from").value(change.from());
+                out.name("to").value(change.to());
+                out.endObject();
+            }
+            out.endArray();
+            out.name("jeps").beginObject();
+            for (Map.Entry<String, List<JEPChange>> entry : batch.jepChanges.entrySet()) {
+                out.name(entry.getKey()).beginArray();
+                for (JEPChange change : entry.getValue()) {
+                    out.beginObject();
+                    out.name("id").value(change.id());
+                    out.name("desc").value(change.desc());
+                    out.name("addition").value(change.addition());
+                    out.endObject();
+                }
+                out.endArray();
+            }
+            out.endObject();
+            out.name("moves").beginArray();
+            for (JEPMove move : batch.jepMoves) {
+                out.beginObject();
+                out.name("id").value(move.id());
+                out.name("desc").value(move.desc());
+                out.name("from").value(move.from());
+                out.name("to").value(move.to());
+                out.endObject();
+            }
+            out.endArray();
+            out.name("pages").beginArray();
+            for (PageChange page : batch.pageChanges) {
+                out.beginObject();
+                out.name("page").value(page.page());
+                out.name("url").value(page.url());
+                out.name("changes").beginArray();
+                for (EntryChange change : page.changes()) {
+                    out.beginObject();
+                    out.name("key").value(change.key());
+                    out.name("from").value(change.from());
+                    out.name("to").value(change.to());
+                    out.endObject();
+                }
+                out.endArray();
+                out.endObject();
+            }
+            out.endArray();
+            out.endObject();
+        }
+
+        @Override
+        public ChangeBatch read(JsonReader in) throws IOException {
+            long time = 0;
+            List<ProjectListChange> listChanges = new ArrayList<>();
+            Map<String, List<JEPChange>> jepChanges = new LinkedHashMap<>();
+            List<JEPMove> jepMoves = new ArrayList<>();
+            List<PageChange> pageChanges = new ArrayList<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "time" -> time = in.nextLong();
+                    case "list" -> {
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            String version = "";
+                            String from = null;
+                            String to = null;
+                            in.beginObject();
+                            while (in.hasNext()) {
+                                switch (in.nextName()) {
+                                    case "version" -> version = in.nextString();
+                                    case "from" -> from = nextNullableString(in);
+                                    case "to" -> to = nextNullableString(in);
+                                    default -> in.skipValue();
+                                }
+                            }
+                            in.endObject();
+                            listChanges.add(new ProjectListChange(version, from, to));
+                        }
+                        in.endArray();
+                    }
+                    case "jeps" -> {
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            String release = in.nextName();
+                            List<JEPChange> changes = new ArrayList<>();
+                            in.beginArray();
+                            while (in.hasNext()) {
+                                String id = "";
+                                String desc = "";
+                                boolean addition = false;
+                                in.beginObject();
+                                while (in.hasNext()) {
+                                    switch (in.nextName()) {
+                                        case "id" -> id = in.nextString();
+                                        case "desc" -> desc = in.nextString();
+                                        case "addition" -> addition = in.nextBoolean();
+                                        default -> in.skipValue();
+                                    }
+                                }
+                                in.endObject();
+                                changes.add(new JEPChange(id, desc, addition));
+                            }
+                            in.endArray();
+                            jepChanges.put(release, changes);
+                        }
+                        in.endObject();
+                    }
+                    case "moves" -> {
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            String id = "";
+                            String desc = "";
+                            String from = "";
+                            String to = "";
+                            in.beginObject();
+                            while (in.hasNext()) {
+                                switch (in.nextName()) {
+                                    case "id" -> id = in.nextString();
+                                    case "desc" -> desc = in.nextString();
+                                    case "from" -> from = in.nextString();
+                                    case "to" -> to = in.nextString();
+                                    default -> in.skipValue();
+                                }
+                            }
+                            in.endObject();
+                            jepMoves.add(new JEPMove(id, desc, from, to));
+                        }
+                        in.endArray();
+                    }
+                    case "pages" -> {
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            pageChanges.add(readPage(in));
+                        }
+                        in.endArray();
+                    }
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new ChangeBatch(time, listChanges, jepChanges, jepMoves, pageChanges);
+        }
+
+        private static PageChange readPage(JsonReader in) throws IOException {
+            String page = "";
+            String url = "";
+            List<EntryChange> changes = new ArrayList<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "page" -> page = in.nextString();
+                    case "url" -> url = in.nextString();
+                    case "changes" -> {
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            String key = "";
+                            String from = null;
+                            String to = null;
+                            in.beginObject();
+                            while (in.hasNext()) {
+                                switch (in.nextName()) {
+                                    case "key" -> key = in.nextString();
+                                    case "from" -> from = nextNullableString(in);
+                                    case "to" -> to = nextNullableString(in);
+                                    default -> in.skipValue();
+                                }
+                            }
+                            in.endObject();
+                            changes.add(new EntryChange(key, from, to));
+                        }
+                        in.endArray();
+                    }
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new PageChange(page, url, changes);
+        }
+
+        @Nullable
+        private static String nextNullableString(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return in.nextString();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package net.covers1624.projectbot.checker;
+
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import net.covers1624.projectbot.Config;
+import net.covers1624.projectbot.metrics.Counter;
+import net.covers1624.projectbot.metrics.Metrics;
+import net.covers1624.projectbot.util.FileUtils;
+import net.covers1624.quack.gson.JsonUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds back changes until they are confirmed, between the checkers and notification.
+ * <p>
+ * Pages occasionally render partially, briefly dropping and then restoring whole lists of entries.
+ * Each detected change is held as pending until it has been seen in {@link Config.Debounce#observations}
+ * consecutive checks of its page, or it has stood for {@link Config.Debounce#windowMinutes}. If the
+ * entry changes back before then, the change is dropped. Snapshots still move on every check, so a
+ * pending change is seen again as its page being checked without the entry changing back.
+ * <p>
+ * An entry removed from one page and added to another, such as a JEP moving between releases,
+ * is confirmed as a unit. Whichever half is confirmed first is held until the other is, as
+ * their pages may be checked on different schedules, or until it has stood for the whole window.
+ * <p>
+ * A fingerprint of the last change sent for each entry is remembered for {@link Config.Debounce#rememberHours},
+ * a change identical to it is never sent again, for example when redetected after a restart.
+ * <p>
+ * Pending changes and fingerprints are persisted, and must be saved before any snapshot is committed.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class ChangeDebouncer {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new Gson();
+
+    private static final Counter DAMPED = Metrics.counter("projectbot_changes_damped_total", "Changes reverted before they were confirmed.");
+    private static final Counter SUPPRESSED = Metrics.counter("projectbot_changes_suppressed_total", "Confirmed changes dropped as identical to the last change sent.");
+
+    private final Path file;
+    private final Config.Debounce debounce;
+    private final State state;
+
+    private boolean dirty;
+
+    public ChangeDebouncer(Path file, Config.Debounce debounce) {
+        this.file = file;
+        this.debounce = debounce;
+        state = loadState(file);
+        Metrics.gauge("projectbot_changes_pending", "Changes waiting to be confirmed.", this::getPendingCount);
+    }
+
+    /**
+     * Record the changes found by a cycle, and take those now confirmed.
+     * <p>
+     * Confirmed changes are not remembered as sent until {@link #recordSent} is called.
+     *
+     * @param now      The time of the cycle, in epoch milliseconds.
+     * @param observed The pages checked successfully this cycle.
+     * @param changes  The changes found this cycle.
+     * @return The confirmed changes, in the order they were first seen.
+     */
+    public synchronized List<Change> observe(long now, Set<String> observed, List<Change> changes) {
+        Set<String> touched = new HashSet<>();
+        for (Change change : changes) {
+            String id = id(change.page(), change.key());
+            touched.add(id);
+            dirty = true;
+
+            Pending pending = state.pending.get(id);
+            if (pending == null) {
+                state.pending.put(id, Pending.of(change, now));
+                continue;
+            }
+            if (Objects.equals(pending.from, change.from()) && Objects.equals(pending.to, change.to())) {
+                // Seen again against the same snapshot, it wasn't committed last time.
+                pending.observations++;
+                continue;
+            }
+            // Changed again before being confirmed.
+            if (Objects.equals(pending.from, change.to())) {
+                state.pending.remove(id);
+                DAMPED.inc();
+                continue;
+            }
+            pending.to = change.to();
+            pending.firstSeen = now;
+            pending.observations = 1;
+        }
+
+        Map<String, List<Pending>> byKey = new HashMap<>();
+        for (Map.Entry<String, Pending> entry : state.pending.entrySet()) {
+            Pending pending = entry.getValue();
+            if (!touched.contains(entry.getKey()) && observed.contains(pending.page)) {
+                pending.observations++;
+                dirty = true;
+            }
+            byKey.computeIfAbsent(pending.key, e -> new ArrayList<>()).add(pending);
+        }
+
+        List<Change> confirmed = new ArrayList<>();
+        Iterator<Map.Entry<String, Pending>> itr = state.pending.entrySet().iterator();
+        while (itr.hasNext()) {
+            Map.Entry<String, Pending> entry = itr.next();
+            Pending pending = entry.getValue();
+            if (!isConfirmed(pending, now)) continue;
+
+            // The other half of a move isn't confirmed yet, hold this half back so they're sent together.
+            Pending counterpart = findCounterpart(pending, byKey.get(pending.key));
+            if (counterpart != null && !isConfirmed(counterpart, now) && !isExpired(pending, now)) continue;
+
+            itr.remove();
+            dirty = true;
+            Change change = pending.toChange();
+            Sent sent = state.sent.get(entry.getKey());
+            if (sent != null && sent.fingerprint.equals(fingerprint(change))) {
+                SUPPRESSED.inc();
+                continue;
+            }
+            confirmed.add(change);
+        }
+        return confirmed;
+    }
+
+    /**
+     * Remember the given changes as sent.
+     *
+     * @param now     The time of the cycle, in epoch milliseconds.
+     * @param changes The changes, as returned by {@link #observe}.
+     */
+    public synchronized void recordSent(long now, List<Change> changes) {
+        for (Change change : changes) {
+            Sent sent = new Sent();
+            sent.fingerprint = fingerprint(change);
+            sent.time = now;
+            state.sent.put(id(change.page(), change.key()), sent);
+            dirty = true;
+        }
+        long expiry = now - TimeUnit.HOURS.toMillis(debounce.rememberHours);
+        dirty |= state.sent.values().removeIf(e -> e.time < expiry);
+    }
+
+    /**
+     * @param now The current time, in epoch milliseconds.
+     * @return If any pending change has stood for the whole window, and will be confirmed by the next cycle.
+     */
+    public synchronized boolean hasExpired(long now) {
+        for (Pending pending : state.pending.values()) {
+            if (isExpired(pending, now)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drop the pending changes of every page not in the given collection.
+     *
+     * @param pages The pages to keep.
+     */
+    public synchronized void retain(Collection<String> pages) {
+        dirty |= state.pending.values().removeIf(e -> !pages.contains(e.page));
+    }
+
+    public synchronized void save() throws IOException {
+        if (!dirty) return;
+
+        FileUtils.writeJsonAtomic(GSON, file, state);
+        dirty = false;
+    }
+
+    // If the change has been seen enough times, or has stood for the whole window.
+    private boolean isConfirmed(Pending pending, long now) {
+        return pending.observations >= Math.max(1, debounce.observations) || isExpired(pending, now);
+    }
+
+    private boolean isExpired(Pending pending, long now) {
+        return debounce.windowMinutes > 0 && now - pending.firstSeen >= TimeUnit.MINUTES.toMillis(debounce.windowMinutes);
+    }
+
+    // The other half of a move, the same entry added to one page and removed from another.
+    @Nullable
+    private static Pending findCounterpart(Pending pending, List<Pending> sameKey) {
+        for (Pending other : sameKey) {
+            if (other.page.equals(pending.page)) continue;
+
+            boolean moved = pending.from == null && other.to == null && other.from != null
+                    || pending.to == null && other.from == null && other.to != null;
+            if (moved) return other;
+        }
+        return null;
+    }
+
+    private synchronized int getPendingCount() {
+        return state.pending.size();
+    }
+
+    private static String id(String page, String key) {
+        return page + "\n" + key;
+    }
+
+    private static String fingerprint(Change change) {
+        return Hashing.murmur3_128()
+                .hashString(change.from() + "\0" + change.to(), StandardCharsets.UTF_8)
+                .toString();
+    }
+
+    private static State loadState(Path file) {
+        if (Files.exists(file)) {
+            try {
+                State state = JsonUtils.parse(GSON, file, State.class);
+                if (state != null) {
+                    return state;
+                }
+            } catch (IOException | JsonParseException ex) {
+                LOGGER.warn("Failed to read pending changes {}. Starting fresh.", file, ex);
+            }
+        }
+        return new State();
+    }
+
+    /**
+     * A change to a single entry on a page.
+     *
+     * @param page The page, {@code list}, a release or {@code watch:<name>}.
+     * @param key  The entry.
+     * @param from The old value, {@code null} if the entry was added.
+     * @param to   The new value, {@code null} if the entry was removed.
+     * @param time When the change was first seen, in epoch milliseconds. For a confirmed
+     *             change this is the cycle it was first seen in, not the one confirming it.
+     */
+    public record Change(String page, String key, @Nullable String from, @Nullable String to, long time) { }
+
+    private static class State {
+
+        /**
+         * Changes waiting to be confirmed, in the order they were first seen.
+         */
+        public Map<String, Pending> pending = new LinkedHashMap<>();
+        /**
+         * The last change sent for each entry.
+         */
+        public Map<String, Sent> sent = new HashMap<>();
+    }
+
+    private static class Pending {
+
+        public String page;
+        public String key;
+        @Nullable
+        public String from;
+        @Nullable
+        public String to;
+        /**
+         * When the change was first seen, in epoch milliseconds.
+         */
+        public long firstSeen;
+        /**
+         * The number of consecutive checks the change has been seen in.
+         */
+        public int observations;
+
+        private static Pending of(Change change, long now) {
+            Pending pending = new Pending();
+            pending.page = change.page();
+            pending.key = change.key();
+            pending.from = change.from();
+            pending.to = change.to();
+            pending.firstSeen = now;
+            pending.observations = 1;
+            return pending;
+        }
+
+        private Change toChange() {
+            return new Change(page, key, from, to, firstSeen);
+        }
+    }
+
+    private static class Sent {
+
+        public String fingerprint;
+        /**
+         * When the change was sent, in epoch milliseconds.
+         */
+        public long time;
+    }
+}
@@ -0,0 +1,395 @@
+package net.covers1624.projectbot.checker;
+
+import org.jetbrains.annotations.Nullable;
+import org.jsoup.parser.Parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A minimal pull scanner over an HTML string.
+ * <p>
+ * Walks the token stream once, producing start tags, end tags and text without
+ * building a tree. Tracks the stack of open elements, including the common implicit
+ * closes for list and table elements, so callers can tell when a region has closed.
+ * <p>
+ * This is intentionally not a full HTML5 tree builder. Extractors built on top of it
+ * should bail out and fall back to a full Jsoup parse when they see markup they
+ * can't reason about.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+final class HtmlScanner {
+
+    private static final Set<String> VOID_ELEMENTS = Set.of(
+            "area", "base", "br", "col", "embed", "hr", "img", "input", "keygen", "link", "meta", "param", "source", "track", "wbr"
+    );
+    // Inline elements which don't affect how Jsoup joins text. Anything else inside a text region should bail.
+    private static final Set<String> INLINE_TEXT_ELEMENTS = Set.of(
+            "a", "abbr", "b", "bdi", "bdo", "big", "br", "cite", "code", "data", "dfn", "em", "font", "i", "img", "kbd",
+            "mark", "q", "s", "samp", "small", "span", "strong", "sub", "sup", "time", "tt", "u", "var", "wbr"
+    );
+    private static final Set<String> RAW_TEXT_ELEMENTS = Set.of("script", "style", "textarea", "title");
+
+    // Common element names, so scanning doesn't allocate a new String for every tag.
+    private static final String[] KNOWN_NAMES = {
+            "a", "b", "i", "p", "q", "s", "u", "br", "dd", "dl", "dt", "em", "h1", "h2", "h3", "h4", "h5", "h6", "hr",
+            "li", "ol", "td", "th", "tr", "tt", "ul", "col", "div", "img", "nav", "pre", "sub", "sup", "var", "abbr",
+            "base", "body", "code", "font", "form", "head", "html", "link", "main", "meta", "span", "cite", "small",
+            "style", "table", "tbody", "tfoot", "thead", "title", "aside", "input", "label", "button", "footer",
+            "header", "script", "strong", "section", "article", "caption", "colgroup", "noscript", "blockquote"
+    };
+
+    private static final Set<String> LIST_ITEMS = Set.of("li");
+    private static final Set<String> LISTS = Set.of("ul", "ol");
+    private static final Set<String> TABLE_CELLS = Set.of("td", "th");
+    private static final Set<String> TABLE_ROWS = Set.of("tr");
+    private static final Set<String> TABLE_SECTIONS = Set.of("tbody", "thead", "tfoot");
+    private static final Set<String> TABLES = Set.of("table");
+
+    private final String html;
+    private int pos;
+
+    private final List<String> stack = new ArrayList<>();
+    private Token token = Token.EOF;
+    private String tagName = "";
+    private int textStart;
+    private int textEnd;
+    // Offsets into html for each attribute of the current start tag. [nameStart, nameEnd, valueStart, valueEnd]
+    private int[] attrs = new int[16];
+    private int attrCount;
+
+    HtmlScanner(String html) {
+        this.html = html;
+    }
+
+    /**
+     * Advance to the next token.
+     *
+     * @return The token.
+     */
+    Token next() {
+        int len = html.length();
+        while (pos < len) {
+            char c = html.charAt(pos);
+            if (c == '<' && pos + 1 < len) {
+                char n = html.charAt(pos + 1);
+                if (isAsciiLetter(n)) {
+                    if (readStartTag()) return token;
+                    break;
+                }
+                if (n == '/' && pos + 2 < len && isAsciiLetter(html.charAt(pos + 2))) {
+                    if (readEndTag()) return token;
+                    break;
+                }
+                if (n == '!' || n == '?' || n == '/') {
+                    skipMarkup();
+                    continue;
+                }
+            }
+            int end = html.indexOf('<', pos + 1);
+            if (end == -1) end = len;
+            textStart = pos;
+            textEnd = end;
+            pos = end;
+            return token = Token.TEXT;
+        }
+        pos = len;
+        return token = Token.EOF;
+    }
+
+    /**
+     * @return The name of the current tag, lower case.
+     */
+    String tagName() {
+        return tagName;
+    }
+
+    /**
+     * @return The number of currently open elements, including the current start tag.
+     */
+    int depth() {
+        return stack.size();
+    }
+
+    /**
+     * Gets the decoded value of the given attribute on the current start tag.
+     *
+     * @param name The lower case attribute name.
+     * @return The value, empty if the attribute has no value, or {@code null} if not present.
+     */
+    @Nullable
+    String attr(String name) {
+        for (int i = 0; i < attrCount; i++) {
+            int nameStart = attrs[i * 4];
+            int nameEnd = attrs[i * 4 + 1];
+            if (nameEnd - nameStart == name.length() && html.regionMatches(true, nameStart, name, 0, name.length())) {
+                return unescape(html.substring(attrs[i * 4 + 2], attrs[i * 4 + 3]), true);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if the current start tag has the given class.
+     *
+     * @param className The class name.
+     * @return If the tag's class attribute contains the class.
+     */
+    boolean hasClass(String className) {
+        String classes = attr("class");
+        if (classes == null) return false;
+
+        for (String cls : classes.split("\\s+")) {
+            if (cls.equalsIgnoreCase(className)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Append the decoded content of the current text token.
+     *
+     * @param accum The builder to append to.
+     */
+    void appendText(StringBuilder accum) {
+        accum.append(unescape(html.substring(textStart, textEnd), false));
+    }
+
+    /**
+     * @param name The element name.
+     * @return If the element is void, and never has any content.
+     */
+    static boolean isVoid(String name) {
+        return VOID_ELEMENTS.contains(name);
+    }
+
+    /**
+     * Checks if the given element can appear inside text without changing
+     * how Jsoup's {@code Element.text()} joins it.
+     *
+     * @param name The element name.
+     * @return If it's a simple inline element.
+     */
+    static boolean isInlineText(String name) {
+        return INLINE_TEXT_ELEMENTS.contains(name);
+    }
+
+    /**
+     * Normalise text the same way Jsoup's {@code Element.text()} does.
+     * <p>
+     * Runs of whitespace are collapsed to a single space, invisible characters
+     * are dropped and the result is trimmed.
+     *
+     * @param text The raw text.
+     * @return The normalised text.
+     */
+    static String normalise(CharSequence text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean lastWasWhite = false;
+        boolean reachedNonWhite = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isActuallyWhitespace(c)) {
+                if (!reachedNonWhite || lastWasWhite) continue;
+                sb.append(' ');
+                lastWasWhite = true;
+            } else if (c != 8203 && c != 173) {
+                sb.append(c);
+                lastWasWhite = false;
+                reachedNonWhite = true;
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    private boolean readStartTag() {
+        int len = html.length();
+        int i = pos + 1;
+        int nameStart = i;
+        while (i < len && !isTagNameEnd(html.charAt(i))) i++;
+        String name = tagName(nameStart, i);
+
+        attrCount = 0;
+        while (true) {
+            while (i < len && isActuallyWhitespace(html.charAt(i))) i++;
+            if (i >= len) return false;
+
+            char c = html.charAt(i);
+            if (c == '>') {
+                i++;
+                break;
+            }
+            if (c == '/') {
+                i++;
+                continue;
+            }
+
+            int attrNameStart = i;
+            while (i < len && !isAttrNameEnd(html.charAt(i))) i++;
+            int attrNameEnd = i;
+            while (i < len && isActuallyWhitespace(html.charAt(i))) i++;
+
+            int valueStart = i;
+            int valueEnd = i;
+            if (i < len && html.charAt(i) == '=') {
+                i++;
+                while (i < len && isActuallyWhitespace(html.charAt(i))) i++;
+                if (i >= len) return false;
+
+                char quote = html.charAt(i);
+                if (quote == '"' || quote == '\'') {
+                    int close = html.indexOf(quote, i + 1);
+                    if (close == -1) return false;
+                    valueStart = i + 1;
+                    valueEnd = close;
+                    i = close + 1;
+                } else {
+                    valueStart = i;
+                    while (i < len && !isActuallyWhitespace(html.charAt(i)) && html.charAt(i) != '>') i++;
+                    valueEnd = i;
+                }
+            }
+            addAttr(attrNameStart, attrNameEnd, valueStart, valueEnd);
+        }
+        pos = i;
+
+        implicitlyClose(name);
+        if (!VOID_ELEMENTS.contains(name)) {
+            stack.add(name);
+        }
+        if (RAW_TEXT_ELEMENTS.contains(name)) {
+            skipRawText(name);
+        }
+        tagName = name;
+        token = Token.START_TAG;
+        return true;
+    }
+
+    private boolean readEndTag() {
+        int len = html.length();
+        int i = pos + 2;
+        int nameStart = i;
+        while (i < len && !isTagNameEnd(html.charAt(i))) i++;
+        String name = tagName(nameStart, i);
+
+        int close = html.indexOf('>', i);
+        if (close == -1) return false;
+        pos = close + 1;
+
+        int idx = stack.lastIndexOf(name);
+        if (idx != -1) {
+            popTo(idx);
+        }
+        attrCount = 0;
+        tagName = name;
+        token = Token.END_TAG;
+        return true;
+    }
+
+    private void skipMarkup() {
+        if (html.startsWith("<!--", pos)) {
+            int end = html.indexOf("-->", pos + 4);
+            pos = end == -1 ? html.length() : end + 3;
+            return;
+        }
+        int end = html.indexOf('>', pos);
+        pos = end == -1 ? html.length() : end + 1;
+    }
+
+    private void skipRawText(String name) {
+        int len = html.length();
+        int i = pos;
+        while (true) {
+            int lt = html.indexOf("</", i);
+            if (lt == -1) {
+                pos = len;
+                return;
+            }
+            if (html.regionMatches(true, lt + 2, name, 0, name.length())) {
+                pos = lt;
+                return;
+            }
+            i = lt + 2;
+        }
+    }
+
+    // The common implicit end tags, enough to keep list and table structure right.
+    private void implicitlyClose(String name) {
+        switch (name) {
+            case "li" -> closeWithin(LIST_ITEMS, LISTS);
+            case "td", "th" -> closeWithin(TABLE_CELLS, TABLE_ROWS);
+            case "tr" -> closeWithin(TABLE_ROWS, TABLE_SECTIONS);
+            case "tbody", "thead", "tfoot" -> closeWithin(TABLE_SECTIONS, TABLES);
+        }
+    }
+
+    // Pops the nearest open target element, and everything above it, unless a boundary element is open above it.
+    private void closeWithin(Set<String> targets, Set<String> boundaries) {
+        for (int i = stack.size() - 1; i >= 0; i--) {
+            String open = stack.get(i);
+            if (targets.contains(open)) {
+                popTo(i);
+                return;
+            }
+            if (boundaries.contains(open) || TABLES.contains(open)) return;
+        }
+    }
+
+    private void popTo(int idx) {
+        stack.subList(idx, stack.size()).clear();
+    }
+
+    private void addAttr(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        if ((attrCount + 1) * 4 > attrs.length) {
+            int[] newAttrs = new int[attrs.length * 2];
+            System.arraycopy(attrs, 0, newAttrs, 0, attrs.length);
+            attrs = newAttrs;
+        }
+        int i = attrCount * 4;
+        attrs[i] = nameStart;
+        attrs[i + 1] = nameEnd;
+        attrs[i + 2] = valueStart;
+        attrs[i + 3] = valueEnd;
+        attrCount++;
+    }
+
+    private String tagName(int start, int end) {
+        int len = end - start;
+        for (String known : KNOWN_NAMES) {
+            if (known.length() == len && html.regionMatches(true, start, known, 0, len)) return known;
+        }
+        return html.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    // Jsoup's unescape sets up a whole tokeniser, only pay for it when there is something to unescape.
+    private static String unescape(String str, boolean inAttribute) {
+        if (str.indexOf('&') == -1) return str;
+
+        return Parser.unescapeEntities(str, inAttribute);
+    }
+
+    private static boolean isTagNameEnd(char c) {
+        return isActuallyWhitespace(c) || c == '/' || c == '>';
+    }
+
+    private static boolean isAttrNameEnd(char c) {
+        return isActuallyWhitespace(c) || c == '/' || c == '>' || c == '=';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isActuallyWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == 160;
+    }
+
+    enum Token {
+        START_TAG,
+        END_TAG,
+        TEXT,
+        EOF
+    }
+}
@@ -0,0 +1,240 @@
+package net.covers1624.projectbot.checker;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import net.covers1624.projectbot.http.UpstreamClient;
+import net.covers1624.projectbot.metrics.PhaseTimers;
+import net.covers1624.projectbot.util.FileUtils;
+import net.covers1624.quack.gson.JsonUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A lookup table of JEP metadata, built from the JEP index page ({@code JEP 0}).
+ * <p>
+ * The index lists every JEP, so one conditional request covers all of them.
+ * The parsed table is persisted to {@code jeps.json} and only replaced when
+ * the index page changes. Lookups never touch the network.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class JepIndex {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new Gson();
+
+    private static final Map<String, String> TYPES = Map.of(
+            "F", "Feature",
+            "I", "Informational",
+            "P", "Process",
+            "R", "Research",
+            "E", "Infrastructure"
+    );
+    private static final Map<String, String> STATUSES = Map.of(
+            "Dra", "Draft",
+            "Sub", "Submitted",
+            "Can", "Candidate",
+            "Pro", "Proposed to Target",
+            "Tar", "Targeted",
+            "Int", "Integrated",
+            "Com", "Completed",
+            "Clo", "Closed",
+            "Act", "Active"
+    );
+
+    private final String url;
+    private final Path indexFile;
+    private final PageFetcher fetcher;
+    private final PhaseTimers timers;
+
+    // Loaded on first use, idle runs never need it.
+    @Nullable
+    private volatile Map<String, JepInfo> jeps;
+
+    public JepIndex(Path cacheDir, String jepsUrl, UpstreamClient upstream) {
+        url = jepsUrl + "0";
+        indexFile = cacheDir.resolve("jeps.json");
+        fetcher = new PageFetcher(cacheDir, upstream);
+        timers = PhaseTimers.forPage("jeps");
+    }
+
+    /**
+     * Refresh the table, if the index page has changed since the last refresh.
+     */
+    public void refresh() throws IOException {
+        boolean first = getIndex().isEmpty();
+
+        long start = System.nanoTime();
+        PageFetcher.Page page = fetcher.fetch(url, !first);
+        timers.fetch().recordSince(start);
+        if (page == null) return;
+
+        PageState state = page.state();
+        if (!first && fetcher.isSameContent(state)) {
+            fetcher.commit(state);
+            return;
+        }
+
+        start = System.nanoTime();
+        Map<String, JepInfo> parsed = getJeps(Jsoup.parse(page.html(), url));
+        timers.parse().recordSince(start);
+        if (parsed.isEmpty()) {
+            // Layout changed or a broken page, keep what we have and try again next time.
+            LOGGER.warn("Found no JEPs in the JEP index, keeping the previous table.");
+            return;
+        }
+
+        start = System.nanoTime();
+        Index index = new Index();
+        index.jeps = parsed;
+        FileUtils.writeJsonAtomic(GSON, indexFile, index);
+        fetcher.commit(state);
+        timers.commit().recordSince(start);
+        jeps = new HashMap<>(parsed);
+        LOGGER.info("Updated JEP index, {} JEPs.", parsed.size());
+    }
+
+    /**
+     * @param id The JEP id.
+     * @return The metadata for the JEP, or {@code null} if it isn't in the index.
+     */
+    @Nullable
+    public JepInfo get(String id) {
+        return getIndex().get(id);
+    }
+
+    /**
+     * @return The number of JEPs in the table.
+     */
+    public int size() {
+        return getIndex().size();
+    }
+
+    private Map<String, JepInfo> getIndex() {
+        Map<String, JepInfo> jeps = this.jeps;
+        if (jeps != null) return jeps;
+
+        synchronized (this) {
+            jeps = this.jeps;
+            if (jeps == null) {
+                jeps = loadIndex(indexFile);
+                this.jeps = jeps;
+            }
+            return jeps;
+        }
+    }
+
+    /**
+     * Extract every JEP from the index page.
+     * <p>
+     * Each row of the {@code jeps} tables holds the type, status, release and
+     * component cells, then the number, then the linked title. The type and status
+     * cells are abbreviated, their {@code title} attribute is preferred when present.
+     *
+     * @param document The index page.
+     * @return The JEPs, keyed by id.
+     */
+    static Map<String, JepInfo> getJeps(Document document) {
+        Map<String, JepInfo> jeps = new LinkedHashMap<>();
+        for (Element row : document.select("table.jeps tr")) {
+            Element a = row.selectFirst("a[href]");
+            if (a == null) continue;
+
+            String href = a.attr("href");
+            String id = href.substring(href.lastIndexOf('/') + 1);
+            if (!StringUtils.isNumeric(id)) continue;
+
+            // The cells before the number.
+            Elements cells = row.select("td");
+            int idCell = -1;
+            for (int i = 0; i < cells.size(); i++) {
+                if (cells.get(i).text().equals(id) || cells.get(i).text().equals(id + ":")) {
+                    idCell = i;
+                    break;
+                }
+            }
+
+            JepInfo info = new JepInfo();
+            info.id = id;
+            info.title = a.text();
+            if (idCell >= 1) info.type = expand(cells.get(0), TYPES);
+            if (idCell >= 2) info.status = expand(cells.get(1), STATUSES);
+            if (idCell >= 3) info.release = StringUtils.trimToNull(cells.get(2).text());
+            if (idCell >= 4) info.component = StringUtils.trimToNull(StringUtils.deleteWhitespace(cells.get(3).text()));
+            jeps.put(id, info);
+        }
+        return jeps;
+    }
+
+    @Nullable
+    private static String expand(Element cell, Map<String, String> abbreviations) {
+        String title = StringUtils.trimToNull(cell.attr("title"));
+        if (title != null) return title;
+
+        String text = StringUtils.trimToNull(cell.text());
+        if (text == null) return null;
+
+        return abbreviations.getOrDefault(text, text);
+    }
+
+    private static Map<String, JepInfo> loadIndex(Path indexFile) {
+        if (Files.exists(indexFile)) {
+            try {
+                Index index = JsonUtils.parse(GSON, indexFile, Index.class);
+                if (index != null && index.jeps != null) {
+                    return new HashMap<>(index.jeps);
+                }
+            } catch (IOException | JsonParseException ex) {
+                LOGGER.warn("Failed to read JEP index {}. Starting fresh.", indexFile, ex);
+            }
+        }
+        return Map.of();
+    }
+
+    private static class Index {
+
+        public Map<String, JepInfo> jeps = new LinkedHashMap<>();
+    }
+
+    /**
+     * Metadata for a single JEP.
+     */
+    public static class JepInfo {
+
+        public String id;
+        public String title;
+        /**
+         * The type, for example {@code Feature}.
+         */
+        @Nullable
+        public String type;
+        /**
+         * The status, for example {@code Targeted} or {@code Closed / Delivered}.
+         */
+        @Nullable
+        public String status;
+        /**
+         * The release the JEP is targeted to or delivered in.
+         */
+        @Nullable
+        public String release;
+        /**
+         * The component, for example {@code core/lang}.
+         */
+        @Nullable
+        public String component;
+    }
+}
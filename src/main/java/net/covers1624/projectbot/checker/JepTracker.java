@@ -0,0 +1,156 @@
+package net.covers1624.projectbot.checker;
+
+import net.covers1624.projectbot.checker.ProjectChecker.JEPChange;
+
+import java.util.*;
+
+/**
+ * Tracks which releases each JEP is on, across every release.
+ * <p>
+ * Each release's JEPs are recorded as its snapshot is committed, only the difference
+ * to what was recorded before is applied. A JEP retargeted from one release to another
+ * is seen by each release's own diff as an unrelated removal and addition, this is
+ * used to find the other side, so the two can be reported as a single move.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class JepTracker {
+
+    // JEP id to the releases it is on.
+    private final Map<String, Set<String>> releases = new HashMap<>();
+    // Release to the JEP ids on it.
+    private final Map<String, Set<String>> jeps = new HashMap<>();
+
+    /**
+     * @param release The release.
+     * @return If the release's JEPs have been recorded.
+     */
+    public synchronized boolean isTracking(String release) {
+        return jeps.containsKey(release);
+    }
+
+    /**
+     * Record the JEPs currently on a release.
+     *
+     * @param release The release.
+     * @param ids     The ids of its JEPs.
+     */
+    public synchronized void update(String release, Collection<String> ids) {
+        Set<String> newIds = Set.copyOf(ids);
+        Set<String> oldIds = jeps.put(release, newIds);
+        if (oldIds != null) {
+            for (String id : oldIds) {
+                if (!newIds.contains(id)) {
+                    removeRelease(id, release);
+                }
+            }
+        }
+        for (String id : newIds) {
+            if (oldIds == null || !oldIds.contains(id)) {
+                releases.computeIfAbsent(id, e -> new HashSet<>(2)).add(release);
+            }
+        }
+    }
+
+    /**
+     * Forget a release, usually because it was removed from the listing.
+     *
+     * @param release The release.
+     */
+    public synchronized void remove(String release) {
+        Set<String> ids = jeps.remove(release);
+        if (ids == null) return;
+
+        for (String id : ids) {
+            removeRelease(id, release);
+        }
+    }
+
+    /**
+     * @param id The JEP id.
+     * @return The releases the JEP is on.
+     */
+    public synchronized Set<String> getReleases(String id) {
+        Set<String> found = releases.get(id);
+        return found != null ? Set.copyOf(found) : Set.of();
+    }
+
+    private void removeRelease(String id, String release) {
+        Set<String> found = releases.get(id);
+        if (found == null) return;
+
+        found.remove(release);
+        if (found.isEmpty()) {
+            releases.remove(id);
+        }
+    }
+
+    /**
+     * Pair JEPs removed from one release with the same JEP added to another.
+     *
+     * @param changes The changes for each release, in listing order.
+     * @return The changes which were not part of a move, and the moves.
+     */
+    public static Moves detectMoves(Map<String, List<JEPChange>> changes) {
+        // Where each JEP was removed from, the first release wins if there are several.
+        Map<String, String> removedFrom = new HashMap<>();
+        for (Map.Entry<String, List<JEPChange>> entry : changes.entrySet()) {
+            for (JEPChange change : entry.getValue()) {
+                if (!change.addition()) {
+                    removedFrom.putIfAbsent(change.id(), entry.getKey());
+                }
+            }
+        }
+        if (removedFrom.isEmpty()) return new Moves(changes, List.of());
+
+        List<JEPMove> moves = new ArrayList<>();
+        Set<Side> paired = new HashSet<>();
+        for (Map.Entry<String, List<JEPChange>> entry : changes.entrySet()) {
+            String release = entry.getKey();
+            for (JEPChange change : entry.getValue()) {
+                if (!change.addition()) continue;
+
+                String from = removedFrom.get(change.id());
+                if (from == null || from.equals(release)) continue;
+
+                removedFrom.remove(change.id());
+                moves.add(new JEPMove(change.id(), change.desc(), from, release));
+                paired.add(new Side(from, change.id()));
+                paired.add(new Side(release, change.id()));
+            }
+        }
+        if (moves.isEmpty()) return new Moves(changes, List.of());
+
+        Map<String, List<JEPChange>> remaining = new LinkedHashMap<>();
+        for (Map.Entry<String, List<JEPChange>> entry : changes.entrySet()) {
+            List<JEPChange> kept = new ArrayList<>(entry.getValue().size());
+            for (JEPChange change : entry.getValue()) {
+                if (!paired.contains(new Side(entry.getKey(), change.id()))) {
+                    kept.add(change);
+                }
+            }
+            if (!kept.isEmpty()) {
+                remaining.put(entry.getKey(), kept);
+            }
+        }
+        return new Moves(remaining, moves);
+    }
+
+    private record Side(String release, String id) { }
+
+    /**
+     * @param changes The changes which were not part of a move, releases left without changes are omitted.
+     * @param moves   The moves.
+     */
+    public record Moves(Map<String, List<JEPChange>> changes, List<JEPMove> moves) { }
+
+    /**
+     * A JEP retargeted from one release to another.
+     *
+     * @param id   The JEP id.
+     * @param desc The JEP title, as on the release it moved to.
+     * @param from The release it was removed from.
+     * @param to   The release it was added to.
+     */
+    public record JEPMove(String id, String desc, String from, String to) { }
+}
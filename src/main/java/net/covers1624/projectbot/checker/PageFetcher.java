@@ -0,0 +1,251 @@
+package net.covers1624.projectbot.checker;
+
+import com.google.common.hash.HashingInputStream;
+import com.google.common.hash.Hashing;
+import com.google.common.io.CountingInputStream;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import net.covers1624.projectbot.http.UpstreamClient;
+import net.covers1624.projectbot.metrics.Counter;
+import net.covers1624.projectbot.metrics.Metrics;
+import net.covers1624.projectbot.util.FileUtils;
+import net.covers1624.quack.gson.JsonUtils;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fetches a single page, making the request conditional using
+ * the ETag / Last-Modified validators of the last processed response.
+ * <p>
+ * The {@link PageState} snapshot of the last processed page is stored in
+ * {@code state.json} inside the cache directory. It is loaded once on
+ * construction, and atomically replaced on each {@link #commit}.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class PageFetcher {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new Gson();
+
+    // How far into a page to look for a <meta> charset declaration, matches Jsoup.
+    private static final int META_SNIFF_BYTES = 5 * 1024;
+    // Either <meta charset="x"> or <meta http-equiv="Content-Type" content="text/html; charset=x">.
+    private static final Pattern META_CHARSET = Pattern.compile("<meta\\s[^>]*charset\\s*=\\s*[\"']?\\s*([A-Za-z0-9._:-]+)", Pattern.CASE_INSENSITIVE);
+    // Never trust a Content-Length enough to allocate more than this up front.
+    private static final int MAX_PRESIZE = 16 * 1024 * 1024;
+
+    private static final Counter DOWNLOADED_BYTES = Metrics.counter("projectbot_downloaded_bytes_total", "Page body bytes downloaded.");
+    private static final Counter NOT_MODIFIED = Metrics.counter("projectbot_not_modified_total", "Page requests answered with 304 Not Modified.");
+
+    private final Path stateFile;
+    private final UpstreamClient upstream;
+    private PageState state;
+
+    public PageFetcher(Path cacheDir, UpstreamClient upstream) {
+        stateFile = cacheDir.resolve("state.json");
+        this.upstream = upstream;
+        state = loadState(stateFile);
+    }
+
+    /**
+     * Fetch the given url.
+     * <p>
+     * The response body is hashed and decoded as it is read, it is never buffered whole as bytes
+     * and nothing is written to disk. The charset is picked as Jsoup would, see {@link #decode}. Deadlines, retries, failing fast, per host limits
+     * and coalescing identical requests are handled by the {@link UpstreamClient}.
+     *
+     * @param url         The url to fetch.
+     * @param conditional If the request may be made conditional on the stored validators.
+     * @return The fetched page, or {@code null} if the server responded with {@code 304 Not Modified}.
+     */
+    @Nullable
+    public Page fetch(String url, boolean conditional) throws IOException {
+        Request.Builder builder = new Request.Builder()
+                .url(url)
+                .get();
+        if (conditional) {
+            PageState state = getState();
+            if (state.etag != null) {
+                builder.header("If-None-Match", state.etag);
+            }
+            if (state.lastModified != null) {
+                builder.header("If-Modified-Since", state.lastModified);
+            }
+        }
+
+        Page page = upstream.executeShared(builder.build(), response -> {
+            if (response.code() == 304) {
+                LOGGER.debug("{} not modified.", url);
+                NOT_MODIFIED.inc();
+                return null;
+            }
+            ResponseBody body = response.body();
+            if (body == null) {
+                throw new IOException("Failed to fetch " + url + ". Got no body.");
+            }
+
+            LOGGER.info("Downloading {}", url);
+            MediaType contentType = body.contentType();
+            PageState newState = new PageState();
+            String html;
+            CountingInputStream counting = new CountingInputStream(body.byteStream());
+            try (HashingInputStream is = new HashingInputStream(Hashing.sha256(), counting)) {
+                html = decode(is, contentType != null ? contentType.charset() : null, body.contentLength());
+                newState.hash = is.hash().toString();
+            } finally {
+                DOWNLOADED_BYTES.add(counting.getCount());
+            }
+            newState.etag = response.header("ETag");
+            newState.lastModified = response.header("Last-Modified");
+            return new Page(html, newState);
+        });
+        if (page == null) return null;
+
+        // The page may be shared with other fetchers, the state is filled in by each.
+        PageState state = new PageState();
+        state.etag = page.state().etag;
+        state.lastModified = page.state().lastModified;
+        state.hash = page.state().hash;
+        return new Page(page.html(), state);
+    }
+
+    /**
+     * Decode a page body, picking its charset the same way Jsoup does.
+     * <p>
+     * A byte order mark wins, then the {@code Content-Type} charset, then a {@code <meta charset>}
+     * or {@code <meta http-equiv="Content-Type">} declaration near the start of the page,
+     * falling back to UTF-8. Only the start of the body is peeked at to pick the charset,
+     * the rest is decoded as it is read.
+     *
+     * @param is            The body, read to the end but not closed.
+     * @param headerCharset The charset from the {@code Content-Type} header, if any.
+     * @param length        The length of the body if known, otherwise {@code -1}.
+     * @return The decoded body.
+     */
+    static String decode(InputStream is, @Nullable Charset headerCharset, long length) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(is, META_SNIFF_BYTES);
+        buffered.mark(META_SNIFF_BYTES);
+        byte[] head = buffered.readNBytes(META_SNIFF_BYTES);
+        buffered.reset();
+
+        Charset charset;
+        if (startsWith(head, 0xEF, 0xBB, 0xBF)) {
+            charset = StandardCharsets.UTF_8;
+            buffered.skipNBytes(3);
+        } else if (startsWith(head, 0xFE, 0xFF)) {
+            charset = StandardCharsets.UTF_16BE;
+            buffered.skipNBytes(2);
+        } else if (startsWith(head, 0xFF, 0xFE)) {
+            charset = StandardCharsets.UTF_16LE;
+            buffered.skipNBytes(2);
+        } else if (headerCharset != null) {
+            charset = headerCharset;
+        } else {
+            Charset meta = sniffMetaCharset(head);
+            charset = meta != null ? meta : StandardCharsets.UTF_8;
+        }
+
+        // Sized up front when the length is known, so the builder doesn't have to grow.
+        StringBuilder sb = new StringBuilder(length > 0 ? (int) Math.min(length, MAX_PRESIZE) : 8192);
+        Reader reader = new InputStreamReader(buffered, charset);
+        char[] buf = new char[8192];
+        int len;
+        while ((len = reader.read(buf)) != -1) {
+            sb.append(buf, 0, len);
+        }
+        return sb.toString();
+    }
+
+    @Nullable
+    private static Charset sniffMetaCharset(byte[] head) {
+        // Declarations are ASCII, whatever the page's charset, so ISO-8859-1 reads them byte for byte.
+        Matcher matcher = META_CHARSET.matcher(new String(head, StandardCharsets.ISO_8859_1));
+        if (!matcher.find()) return null;
+
+        try {
+            Charset charset = Charset.forName(matcher.group(1));
+            // A page read as ASCII can't really be UTF-16, browsers and Jsoup ignore it too.
+            return charset.name().startsWith("UTF-16") ? StandardCharsets.UTF_8 : charset;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, int... prefix) {
+        if (bytes.length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if ((bytes[i] & 0xFF) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the given fetched state has the same content as the last committed state.
+     *
+     * @param state The state of a page returned by {@link #fetch}.
+     * @return If the content hashes match.
+     */
+    public boolean isSameContent(PageState state) {
+        return state.hash != null && state.hash.equals(getState().hash);
+    }
+
+    /**
+     * Store the given snapshot, to be used for the next conditional request
+     * and as the previous state to diff against.
+     * <p>
+     * This should only be called once the fetched page has been fully processed.
+     * The snapshot is written to a temporary file and moved into place.
+     *
+     * @param state The state of a page returned by {@link #fetch}, with its entries populated.
+     */
+    public void commit(PageState state) throws IOException {
+        FileUtils.writeJsonAtomic(GSON, stateFile, state);
+        this.state = state;
+    }
+
+    /**
+     * @return The last committed snapshot.
+     */
+    public PageState getState() {
+        return state;
+    }
+
+    private static PageState loadState(Path stateFile) {
+        if (Files.exists(stateFile)) {
+            try {
+                PageState parsed = JsonUtils.parse(GSON, stateFile, PageState.class);
+                if (parsed != null) {
+                    return parsed;
+                }
+            } catch (IOException | JsonSyntaxException ex) {
+                LOGGER.warn("Failed to read page state {}. Ignoring.", stateFile, ex);
+            }
+        }
+        return new PageState();
+    }
+
+    /**
+     * A fetched page.
+     *
+     * @param html  The decoded page content.
+     * @param state The validators and content hash of the response. Entries are not populated.
+     */
+    public record Page(String html, PageState state) { }
+}
@@ -0,0 +1,30 @@
+package net.covers1624.projectbot.checker;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+
+/**
+ * The persisted snapshot of a fetched page.
+ * <p>
+ * Holds the validators returned by the server, the content hash and
+ * the entries extracted from the last page we successfully processed.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class PageState {
+
+    @Nullable
+    public String etag;
+    @Nullable
+    public String lastModified;
+    @Nullable
+    public String hash;
+    /**
+     * The entries extracted from the page, in page order.
+     * <p>
+     * {@code null} if this snapshot was written before entries were stored.
+     */
+    @Nullable
+    public LinkedHashMap<String, String> entries;
+}
@@ -1,97 +1,237 @@
 package net.covers1624.projectbot.checker;
 
-import com.google.common.collect.Sets;
-import net.covers1624.projectbot.OpenJdkProjectBot;
-import net.covers1624.quack.io.IOUtils;
-import net.covers1624.quack.net.DownloadAction;
-import net.covers1624.quack.net.okhttp.OkHttpDownloadAction;
+import net.covers1624.projectbot.http.UpstreamClient;
+import net.covers1624.projectbot.store.BackupStore;
+import net.covers1624.projectbot.watch.EntryChange;
+import net.covers1624.projectbot.watch.SelectorExtractor;
+import net.covers1624.projectbot.watch.WatchedPage;
 import org.jetbrains.annotations.Nullable;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 
-import static net.covers1624.projectbot.OpenJdkProjectBot.JDK_LIST_URL;
-import static net.covers1624.projectbot.OpenJdkProjectBot.TIME_FORMAT;
-
 /**
  * Created by covers1624 on 26/5/22.
  */
 public class ProjectChecker {
 
-    private final Path cacheDir;
-    private final Path prev;
-    private final Path curr;
+    // Mirrored by scanJEPs, parsed once.
+    private static final Evaluator FEATURES = SelectorExtractor.parse("h2[id=Features] + blockquote > a");
+    private static final Evaluator TABLE = SelectorExtractor.parse(".jeps tbody a");
+
     private final String version;
+    private final WatchedPage page;
 
-    public ProjectChecker(Path cacheDir, String version) {
-        this.cacheDir = cacheDir;
-        prev = cacheDir.resolve("prev.html");
-        curr = cacheDir.resolve("curr.html");
+    public ProjectChecker(Path cacheDir, String version, String url, @Nullable BackupStore backupStore, UpstreamClient upstream) {
         this.version = version;
+        page = new WatchedPage(cacheDir, version, url, (html, baseUri) -> toEntries(extractJEPs(html, baseUri)), backupStore, upstream);
     }
 
+    /**
+     * Check the Project for changes.
+     * <p>
+     * The new snapshot is not persisted until {@link #commit()} is called, so
+     * the changes can be recorded somewhere durable first. Checking again
+     * before committing will detect the same changes.
+     *
+     * @param currTime The time of the check.
+     * @return The changes.
+     */
     public Result checkProject(Date currTime) throws IOException {
-        Document currDoc = requestDocument();
-        Document prevDoc = getPrevious();
-        Map<String, JEP> newJepMap = getJEPs(currDoc);
-        Map<String, JEP> oldJepMap = getJEPs(prevDoc);
-
-        List<JEPChange> jepChanges = new LinkedList<>();
-        Set<String> newJeps = Sets.difference(newJepMap.keySet(), oldJepMap.keySet());
-        Set<String> remJeps = Sets.difference(oldJepMap.keySet(), newJepMap.keySet());
-
-        for (String id : newJeps) {
-            JEP jep = newJepMap.get(id);
-            jepChanges.add(new JEPChange(id, jep.desc, true));
-        }
+        WatchedPage.Update update = page.check(currTime);
+        if (update == null) return new Result(List.of());
 
-        for (String id : remJeps) {
-            JEP jep = oldJepMap.get(id);
-            jepChanges.add(new JEPChange(id, jep.desc, false));
-        }
+        return new Result(toJEPChanges(update.changes()));
+    }
 
-        if (!jepChanges.isEmpty()) {
-            if (Files.exists(prev)) {
-                Path backup = cacheDir.resolve("backups/" + TIME_FORMAT.format(currTime) + ".html");
-                Files.move(prev, IOUtils.makeParents(backup));
-            }
-            Files.copy(curr, IOUtils.makeParents(prev));
-        }
+    /**
+     * Persist the snapshot from the last {@link #checkProject} call, if any.
+     */
+    public void commit() throws IOException {
+        page.commit();
+    }
 
-        return new Result(jepChanges);
+    public String getVersion() {
+        return version;
     }
 
-    @Nullable
-    private Document getPrevious() throws IOException {
-        if (Files.notExists(prev)) return null;
+    /**
+     * @return The ids of the JEPs in the last committed snapshot.
+     */
+    public Set<String> getJepIds() throws IOException {
+        return page.getEntries().keySet();
+    }
 
-        return Jsoup.parse(Files.readString(prev), JDK_LIST_URL + version);
+    /**
+     * @return The JEP titles from the last committed snapshot, keyed by id, in page order.
+     */
+    public Map<String, String> getJeps() throws IOException {
+        return page.getEntries();
     }
 
-    private Document requestDocument() throws IOException {
-        DownloadAction action = new OkHttpDownloadAction()
-                .setQuiet(false)
-                .setUrl(JDK_LIST_URL + version)
-                .setClient(OpenJdkProjectBot.HTTP_CLIENT)
-                .setDest(curr);
-        action.execute();
+    /**
+     * Extract the JEPs from the given page.
+     * <p>
+     * Tries the lightweight {@link #scanJEPs} first, falling back to a
+     * full Jsoup parse if the page layout isn't understood.
+     *
+     * @param html    The page.
+     * @param baseUri The page url.
+     * @return The JEPs, keyed by id.
+     */
+    public static Map<String, JEP> extractJEPs(String html, String baseUri) {
+        Map<String, JEP> jeps = scanJEPs(html);
+        if (jeps != null) return jeps;
 
-        return Jsoup.parse(Files.readString(curr), JDK_LIST_URL + version);
+        return getJEPs(Jsoup.parse(html, baseUri));
     }
 
-    private Map<String, JEP> getJEPs(@Nullable Document document) {
+    /**
+     * Extract the JEPs from the given page without building a DOM.
+     * <p>
+     * Mirrors the {@code h2[id=Features] + blockquote > a} and {@code .jeps tbody a}
+     * selectors used by {@link #getJEPs}, stopping as soon as the Features blockquote closes.
+     * Table cells are only read inside an explicit {@code tbody}, a table without one is left to Jsoup.
+     *
+     * @param html The page.
+     * @return The JEPs, keyed by id, or {@code null} if the page should be parsed fully.
+     */
+    @Nullable
+    static Map<String, JEP> scanJEPs(String html) {
+        HtmlScanner scanner = new HtmlScanner(html);
+        Map<String, JEP> features = new LinkedHashMap<>();
+        Map<String, JEP> table = new LinkedHashMap<>();
+        boolean sawHeading = false;
+        boolean sawBlockquote = false;
+        boolean sawTable = false;
+
+        int heading = -1;
+        int sibling = -1;
+        int blockquote = -1;
+        int jeps = -1;
+        int tbody = -1;
+        int excluded = -1;
+        int cell = -1;
+
+        int anchor = -1;
+        boolean anchorInFeatures = false;
+        String href = "";
+        StringBuilder text = new StringBuilder();
+        while (true) {
+            HtmlScanner.Token token = scanner.next();
+            int depth = scanner.depth();
+            if (anchor != -1 && depth < anchor) {
+                String id = href.substring(href.lastIndexOf('/') + 1);
+                addJep(anchorInFeatures ? features : table, id, HtmlScanner.normalise(text));
+                anchor = -1;
+            }
+            // The Features heading just closed, the next element at the same depth may be its blockquote.
+            boolean headingClosed = heading != -1 && depth < heading;
+            if (headingClosed) {
+                sibling = heading;
+                heading = -1;
+            }
+            if (blockquote != -1 && depth < blockquote) {
+                if (!features.isEmpty()) return features;
+                blockquote = -1;
+            }
+            if (tbody != -1 && depth < tbody) tbody = -1;
+            if (excluded != -1 && depth < excluded) excluded = -1;
+            if (cell != -1 && depth < cell) cell = -1;
+            if (jeps != -1 && depth < jeps) jeps = -1;
+
+            switch (token) {
+                case START_TAG -> {
+                    String name = scanner.tagName();
+                    if (anchor != -1) {
+                        // Anything more than simple inline markup inside the anchor, let Jsoup deal with it.
+                        if (name.equals("a") || !HtmlScanner.isInlineText(name)) return null;
+                        if (name.equals("br")) text.append(' ');
+                        continue;
+                    }
+                    boolean follows = depth == sibling;
+                    sibling = -1;
+                    if (name.equals("h2") && isId(scanner.attr("id"), "Features")) {
+                        sawHeading = true;
+                        heading = depth;
+                    } else if (name.equals("blockquote") && follows && blockquote == -1) {
+                        sawBlockquote = true;
+                        blockquote = depth;
+                    } else if (jeps == -1 && scanner.hasClass("jeps")) {
+                        sawTable = true;
+                        jeps = depth;
+                    } else if (jeps != -1 && name.equals("tbody")) {
+                        tbody = depth;
+                    } else if (jeps != -1 && (name.equals("thead") || name.equals("tfoot"))) {
+                        // Implicitly closes any open tbody, at the same depth.
+                        tbody = -1;
+                        excluded = depth;
+                    } else if (jeps != -1 && (name.equals("td") || name.equals("th"))) {
+                        // Rows outside a tbody, Jsoup's tree builder decides where they end up.
+                        if (tbody == -1 && excluded == -1) return null;
+                        cell = depth;
+                    } else if (name.equals("a")) {
+                        boolean inFeatures = blockquote != -1 && depth == blockquote + 1;
+                        boolean inTable = cell != -1 && tbody != -1;
+                        if (inFeatures || inTable) {
+                            anchor = depth;
+                            anchorInFeatures = inFeatures;
+                            String attr = scanner.attr("href");
+                            href = attr != null ? attr : "";
+                            text.setLength(0);
+                        }
+                    }
+                }
+                case END_TAG -> {
+                    if (!headingClosed) sibling = -1;
+                }
+                case TEXT -> {
+                    if (anchor != -1) {
+                        scanner.appendText(text);
+                    }
+                }
+                case EOF -> {
+                    if (!features.isEmpty()) return features;
+                    if (!table.isEmpty()) return table;
+                    // No JEP table, and no Features heading or an empty Features blockquote, Jsoup won't find anything either.
+                    boolean unsure = sawTable || sawHeading && !sawBlockquote;
+                    return unsure ? null : Map.of();
+                }
+            }
+        }
+    }
+
+    /**
+     * Convert the entry changes between two snapshots to JEP changes.
+     *
+     * @param changes The changes, from {@link WatchedPage#diff}.
+     * @return The JEPs added and removed, retitled JEPs are not reported.
+     */
+    public static List<JEPChange> toJEPChanges(List<EntryChange> changes) {
+        List<JEPChange> jepChanges = new ArrayList<>(changes.size());
+        for (EntryChange change : changes) {
+            if (change.from() == null) {
+                jepChanges.add(new JEPChange(change.key(), change.to(), true));
+            } else if (change.to() == null) {
+                jepChanges.add(new JEPChange(change.key(), change.from(), false));
+            }
+        }
+        return jepChanges;
+    }
+
+    static Map<String, JEP> getJEPs(@Nullable Document document) {
         if (document == null) return Map.of();
 
         Map<String, JEP> jeps = new LinkedHashMap<>();
-        Elements search = document.select("h2[id=Features] + blockquote > a");
+        Elements search = document.select(FEATURES);
         if (search.isEmpty()) {
-            search = document.select(".jeps tbody a");
+            search = document.select(TABLE);
         }
         for (Element a : search) {
             String href = a.attr("href");
@@ -99,13 +239,41 @@ public class ProjectChecker {
 
             String id = href.substring(lastSlash + 1);
 
-            jeps.put(id, new JEP(id, a.text()));
+            addJep(jeps, id, a.text());
         }
 
         return jeps;
     }
 
-    private record JEP(String id, String desc) { }
+    // Keyed by the interned id, so the map doesn't hold its own copy.
+    private static void addJep(Map<String, JEP> jeps, String id, String desc) {
+        JEP jep = new JEP(id, desc);
+        jeps.put(jep.id, jep);
+    }
+
+    /**
+     * @param jeps The JEPs.
+     * @return The JEP titles, keyed by id, as the entries of a {@link WatchedPage}.
+     */
+    public static LinkedHashMap<String, String> toEntries(Map<String, JEP> jeps) {
+        LinkedHashMap<String, String> entries = new LinkedHashMap<>();
+        for (JEP jep : jeps.values()) {
+            entries.put(jep.id, jep.desc);
+        }
+        return entries;
+    }
+
+    private static boolean isId(@Nullable String attr, String id) {
+        return attr != null && attr.trim().equalsIgnoreCase(id);
+    }
+
+    public record JEP(String id, String desc) {
+
+        public JEP {
+            id = WatchedPage.intern(id);
+            desc = WatchedPage.intern(desc);
+        }
+    }
 
     public record JEPChange(String id, String desc, boolean addition) { }
 
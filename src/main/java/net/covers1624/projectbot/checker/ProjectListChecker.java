@@ -1,102 +1,218 @@
 package net.covers1624.projectbot.checker;
 
-import com.google.common.collect.Sets;
-import net.covers1624.projectbot.OpenJdkProjectBot;
-import net.covers1624.quack.io.IOUtils;
-import net.covers1624.quack.net.DownloadAction;
-import net.covers1624.quack.net.okhttp.OkHttpDownloadAction;
+import net.covers1624.projectbot.http.UpstreamClient;
+import net.covers1624.projectbot.store.BackupStore;
+import net.covers1624.projectbot.watch.EntryChange;
+import net.covers1624.projectbot.watch.SelectorExtractor;
+import net.covers1624.projectbot.watch.WatchedPage;
 import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.Nullable;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.select.Evaluator;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 
-import static net.covers1624.projectbot.OpenJdkProjectBot.JDK_LIST_URL;
-import static net.covers1624.projectbot.OpenJdkProjectBot.TIME_FORMAT;
-
 /**
  * Created by covers1624 on 26/5/22.
  */
 public class ProjectListChecker {
 
-    private final Path cacheDir;
-    private final Path prev;
-    private final Path curr;
+    // Mirrored by scanVersions, parsed once.
+    private static final Evaluator LIST = SelectorExtractor.parse("div[id=main] ul");
+    private static final Evaluator ITEM = SelectorExtractor.parse("li");
+
+    private final WatchedPage page;
 
-    public ProjectListChecker(Path cacheDir) {
-        this.cacheDir = cacheDir;
-        prev = cacheDir.resolve("prev.html");
-        curr = cacheDir.resolve("curr.html");
+    public ProjectListChecker(Path cacheDir, String url, @Nullable BackupStore backupStore, UpstreamClient upstream) {
+        page = new WatchedPage(cacheDir, "list", url, (html, baseUri) -> toEntries(extractVersions(html, baseUri)), backupStore, upstream);
     }
 
+    /**
+     * Check the Project listing for changes.
+     * <p>
+     * The new snapshot is not persisted until {@link #commit()} is called, so
+     * the changes can be recorded somewhere durable first. Checking again
+     * before committing will detect the same changes.
+     *
+     * @param currTime The time of the check.
+     * @return The changes.
+     */
     public Result checkProjectList(Date currTime) throws IOException {
-        Map<String, ProjectVersion> newVersions = getVersions(requestDocument());
-        Map<String, ProjectVersion> oldVersions = getVersions(getPrevious());
+        WatchedPage.Update update = page.check(currTime);
+        if (update == null) {
+            return new Result(List.of(), getVersions());
+        }
 
-        Set<String> newReleases = Sets.difference(newVersions.keySet(), oldVersions.keySet());
-        Set<String> removedReleases = Sets.difference(oldVersions.keySet(), newVersions.keySet());
-        Set<String> commonReleases = Sets.intersection(newVersions.keySet(), oldVersions.keySet());
+        return new Result(toListChanges(update.changes()), update.entries().keySet());
+    }
 
-        List<ProjectListChange> changes = new LinkedList<>();
-        for (String release : newReleases) {
-            ProjectVersion version = newVersions.get(release);
-            changes.add(new ProjectListChange(release, null, version.desc));
-        }
-        for (String release : removedReleases) {
-            ProjectVersion version = oldVersions.get(release);
-            changes.add(new ProjectListChange(release, version.desc, null));
+    /**
+     * Convert the entry changes between two snapshots to listing changes.
+     *
+     * @param changes The changes, from {@link WatchedPage#diff}.
+     * @return The listing changes.
+     */
+    public static List<ProjectListChange> toListChanges(List<EntryChange> changes) {
+        List<ProjectListChange> listChanges = new ArrayList<>(changes.size());
+        for (EntryChange change : changes) {
+            listChanges.add(new ProjectListChange(change.key(), change.from(), change.to()));
         }
+        return listChanges;
+    }
 
-        for (String release : commonReleases) {
-            ProjectVersion newVersion = newVersions.get(release);
-            ProjectVersion oldVersion = oldVersions.get(release);
-            if (!newVersion.desc.equals(oldVersion.desc)) {
-                changes.add(new ProjectListChange(release, oldVersion.desc, newVersion.desc));
-            }
-        }
+    /**
+     * Persist the snapshot from the last {@link #checkProjectList} call, if any.
+     */
+    public void commit() throws IOException {
+        page.commit();
+    }
 
-        if (!changes.isEmpty()) {
-            if (Files.exists(prev)) {
-                Path backup = cacheDir.resolve("backups/" + TIME_FORMAT.format(currTime) + ".html");
-                Files.move(prev, IOUtils.makeParents(backup));
-            }
-            Files.copy(curr, IOUtils.makeParents(prev));
-        }
+    /**
+     * @return The versions from the last committed snapshot, in listing order.
+     */
+    public Set<String> getVersions() throws IOException {
+        return page.getEntries().keySet();
+    }
 
-        return new Result(changes, newVersions.keySet());
+    /**
+     * @return The release descriptions from the last committed snapshot, keyed by version, in listing order.
+     */
+    public Map<String, String> getReleases() throws IOException {
+        return page.getEntries();
     }
 
-    @Nullable
-    private Document getPrevious() throws IOException {
-        if (Files.notExists(prev)) return null;
+    /**
+     * Extract the Project versions from the given page.
+     * <p>
+     * Tries the lightweight {@link #scanVersions} first, falling back to a
+     * full Jsoup parse if the page layout isn't understood.
+     *
+     * @param html    The page.
+     * @param baseUri The page url.
+     * @return The versions, keyed by version.
+     */
+    public static Map<String, ProjectVersion> extractVersions(String html, String baseUri) {
+        Map<String, ProjectVersion> versions = scanVersions(html);
+        if (versions != null) return versions;
+
+        return getVersions(Jsoup.parse(html, baseUri));
+    }
 
-        return Jsoup.parse(Files.readString(prev), JDK_LIST_URL);
+    /**
+     * Extract the Project versions from the given page without building a DOM.
+     * <p>
+     * Mirrors the {@code div[id=main] ul} selector used by {@link #getVersions},
+     * stopping as soon as the list closes.
+     *
+     * @param html The page.
+     * @return The versions, keyed by version, or {@code null} if the page should be parsed fully.
+     */
+    @Nullable
+    static Map<String, ProjectVersion> scanVersions(String html) {
+        HtmlScanner scanner = new HtmlScanner(html);
+        Map<String, ProjectVersion> versions = new LinkedHashMap<>();
+        boolean sawMain = false;
+
+        int main = -1;
+        int list = -1;
+        int item = -1;
+        int child = -1;
+        boolean seenChild = false;
+        StringBuilder itemText = new StringBuilder();
+        StringBuilder childText = new StringBuilder();
+        while (true) {
+            HtmlScanner.Token token = scanner.next();
+            int depth = scanner.depth();
+            if (child != -1 && depth < child) child = -1;
+            if (item != -1 && depth < item) {
+                if (!addVersion(versions, seenChild, itemText, childText)) return null;
+                item = -1;
+            }
+            if (list != -1 && depth < list) return versions;
+            if (main != -1 && depth < main) main = -1;
+
+            switch (token) {
+                case START_TAG -> {
+                    String name = scanner.tagName();
+                    if (list == -1) {
+                        if (main == -1 && name.equals("div") && isId(scanner.attr("id"), "main")) {
+                            sawMain = true;
+                            main = depth;
+                        } else if (main != -1 && name.equals("ul")) {
+                            list = depth;
+                        }
+                        continue;
+                    }
+                    if (name.equals("li") && depth == list + 1) {
+                        // A new item implicitly closes the last.
+                        if (item != -1 && !addVersion(versions, seenChild, itemText, childText)) return null;
+                        item = depth;
+                        child = -1;
+                        seenChild = false;
+                        itemText.setLength(0);
+                        childText.setLength(0);
+                        continue;
+                    }
+                    // Nested lists or anything more than simple inline markup, let Jsoup deal with it.
+                    if (item == -1 || !HtmlScanner.isInlineText(name)) return null;
+                    if (name.equals("br")) {
+                        itemText.append(' ');
+                        if (child != -1) childText.append(' ');
+                    }
+                    if (!seenChild) {
+                        seenChild = true;
+                        child = HtmlScanner.isVoid(name) ? -1 : depth;
+                    }
+                }
+                case TEXT -> {
+                    if (item != -1) {
+                        scanner.appendText(itemText);
+                        if (child != -1) {
+                            scanner.appendText(childText);
+                        }
+                    }
+                }
+                case END_TAG -> { }
+                case EOF -> {
+                    if (list != -1) {
+                        if (item != -1 && !addVersion(versions, seenChild, itemText, childText)) return null;
+                        return versions;
+                    }
+                    // No main div at all, Jsoup won't find anything either.
+                    return sawMain ? null : Map.of();
+                }
+            }
+        }
     }
 
-    private Document requestDocument() throws IOException {
-        DownloadAction action = new OkHttpDownloadAction()
-                .setQuiet(false)
-                .setUrl(JDK_LIST_URL)
-                .setClient(OpenJdkProjectBot.HTTP_CLIENT)
-                .setDest(curr);
-        action.execute();
+    private static boolean addVersion(Map<String, ProjectVersion> versions, boolean seenChild, StringBuilder itemText, StringBuilder childText) {
+        // Items without an element child make Jsoup throw, let it.
+        if (!seenChild) return false;
+
+        String version = HtmlScanner.normalise(childText);
+        String desc = HtmlScanner.normalise(itemText).replace(version, "").trim();
+        desc = StringUtils.removeStart(desc, "(");
+        desc = StringUtils.removeEnd(desc, ")");
+        versions.put(version, new ProjectVersion(version, desc));
+        return true;
+    }
 
-        return Jsoup.parse(Files.readString(curr), JDK_LIST_URL);
+    private static boolean isId(@Nullable String attr, String id) {
+        return attr != null && attr.trim().equalsIgnoreCase(id);
     }
 
     public static Map<String, ProjectVersion> getVersions(@Nullable Document document) {
         if (document == null) return Map.of();
 
-        Element ul = document.select("div[id=main] ul").first();
+        Element ul = document.selectFirst(LIST);
         if (ul == null) return Map.of();
 
         Map<String, ProjectVersion> versions = new LinkedHashMap<>();
-        for (Element li : ul.select("li")) {
+        for (Element li : ul.select(ITEM)) {
             Element a = li.child(0);
             String version = a.text();
             String desc = li.text().replace(version, "").trim();
@@ -107,6 +223,18 @@ public class ProjectListChecker {
         return versions;
     }
 
+    /**
+     * @param versions The versions.
+     * @return The release descriptions, keyed by version, as the entries of a {@link WatchedPage}.
+     */
+    public static LinkedHashMap<String, String> toEntries(Map<String, ProjectVersion> versions) {
+        LinkedHashMap<String, String> entries = new LinkedHashMap<>();
+        for (ProjectVersion version : versions.values()) {
+            entries.put(version.version, version.desc);
+        }
+        return entries;
+    }
+
     public record ProjectVersion(String version, String desc) { }
 
     public record Result(List<ProjectListChange> changes, Set<String> versions) { }
@@ -1,15 +1,17 @@
 package net.covers1624.projectbot.discord;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import net.covers1624.projectbot.OpenJdkProjectBot;
 import okhttp3.Request;
-import okhttp3.RequestBody;
 import okhttp3.Response;
 import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,7 +24,6 @@ import java.util.List;
  */
 public class DiscordWebhook {
 
-    private final String url;
     @Nullable
     private String content;
     @Nullable
@@ -32,15 +33,6 @@ public class DiscordWebhook {
     private boolean tts;
     private final List<Embed> embeds = new ArrayList<>();
 
-    /**
-     * Constructs a new DiscordWebhook instance
-     *
-     * @param url The webhook URL obtained in Discord
-     */
-    public DiscordWebhook(String url) {
-        this.url = url;
-    }
-
     public DiscordWebhook setContent(String content) {
         this.content = content;
         return this;
@@ -66,102 +58,121 @@ public class DiscordWebhook {
         return this;
     }
 
-    public void execute() throws IOException {
-        if (content == null && embeds.isEmpty()) {
-            throw new IllegalArgumentException("Set content or add at least one EmbedObject");
-        }
-
-        JsonObject json = new JsonObject();
-
-        json.addProperty("content", content);
-        json.addProperty("username", username);
-        json.addProperty("avatar_url", avatarUrl);
-        json.addProperty("tts", tts);
-
-        if (!embeds.isEmpty()) {
-            JsonArray embedObjects = new JsonArray();
-
-            for (Embed embed : embeds) {
-                JsonObject jsonEmbed = new JsonObject();
-
-                jsonEmbed.addProperty("title", embed.getTitle());
-                jsonEmbed.addProperty("description", embed.getDescription());
-                jsonEmbed.addProperty("url", embed.getUrl());
-
-                if (embed.getColor() != null) {
-                    Color color = embed.getColor();
-                    int rgb = color.getRed();
-                    rgb = (rgb << 8) + color.getGreen();
-                    rgb = (rgb << 8) + color.getBlue();
-
-                    jsonEmbed.addProperty("color", rgb);
-                }
-
-                Embed.Footer footer = embed.getFooter();
-                Embed.Image image = embed.getImage();
-                Embed.Thumbnail thumbnail = embed.getThumbnail();
-                Embed.Author author = embed.getAuthor();
-                List<Embed.Field> fields = embed.getFields();
-
-                if (footer != null) {
-                    JsonObject jsonFooter = new JsonObject();
-
-                    jsonFooter.addProperty("text", footer.text());
-                    jsonFooter.addProperty("icon_url", footer.iconUrl());
-                    jsonEmbed.add("footer", jsonFooter);
-                }
+    public List<Embed> getEmbeds() {
+        return embeds;
+    }
 
-                if (image != null) {
-                    JsonObject jsonImage = new JsonObject();
+    /**
+     * Execute this webhook against the given webhook url.
+     *
+     * @param url The webhook URL obtained in Discord
+     */
+    public void execute(String url) throws IOException {
+        Request.Builder builder = new Request.Builder()
+                .url(url)
+                .post(encode().toRequestBody());
 
-                    jsonImage.addProperty("url", image.url());
-                    jsonEmbed.add("image", jsonImage);
-                }
+        try (Response response = OpenJdkProjectBot.httpClient().newCall(builder.build()).execute()) {
+            if (!response.isSuccessful()) {
+                String body = response.body() != null ? response.body().string() : null;
+                throw new RuntimeException("Got: " + response.code() + " body: " + body);
+            }
+        }
+    }
 
-                if (thumbnail != null) {
-                    JsonObject jsonThumbnail = new JsonObject();
+    /**
+     * Encodes this webhook to json.
+     * <p>
+     * The returned payload is immutable, and can be sent to any number of webhook urls.
+     *
+     * @return The payload.
+     */
+    public WebhookPayload encode() {
+        if (content == null && embeds.isEmpty()) {
+            throw new IllegalArgumentException("Set content or add at least one EmbedObject");
+        }
 
-                    jsonThumbnail.addProperty("url", thumbnail.url());
-                    jsonEmbed.add("thumbnail", jsonThumbnail);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(512);
+        try (JsonWriter json = new JsonWriter(new OutputStreamWriter(bos, StandardCharsets.UTF_8))) {
+            json.setSerializeNulls(false);
+            json.beginObject();
+            json.name("content").value(content);
+            json.name("username").value(username);
+            json.name("avatar_url").value(avatarUrl);
+            json.name("tts").value(tts);
+
+            if (!embeds.isEmpty()) {
+                json.name("embeds").beginArray();
+                for (Embed embed : embeds) {
+                    writeEmbed(json, embed);
                 }
+                json.endArray();
+            }
+            json.endObject();
+        } catch (IOException ex) {
+            // Writing to memory, can't happen.
+            throw new UncheckedIOException(ex);
+        }
+        return new WebhookPayload(bos.toByteArray());
+    }
 
-                if (author != null) {
-                    JsonObject jsonAuthor = new JsonObject();
+    private static void writeEmbed(JsonWriter json, Embed embed) throws IOException {
+        json.beginObject();
+        json.name("title").value(embed.getTitle());
+        json.name("description").value(embed.getDescription());
+        json.name("url").value(embed.getUrl());
 
-                    jsonAuthor.addProperty("name", author.name());
-                    jsonAuthor.addProperty("url", author.url());
-                    jsonAuthor.addProperty("icon_url", author.iconUrl());
-                    jsonEmbed.add("author", jsonAuthor);
-                }
+        if (embed.getColor() != null) {
+            Color color = embed.getColor();
+            int rgb = color.getRed();
+            rgb = (rgb << 8) + color.getGreen();
+            rgb = (rgb << 8) + color.getBlue();
 
-                JsonArray jsonFields = new JsonArray();
-                for (Embed.Field field : fields) {
-                    JsonObject jsonField = new JsonObject();
+            json.name("color").value(rgb);
+        }
 
-                    jsonField.addProperty("name", field.name());
-                    jsonField.addProperty("value", field.value());
-                    jsonField.addProperty("inline", field.inline());
+        Embed.Footer footer = embed.getFooter();
+        Embed.Image image = embed.getImage();
+        Embed.Thumbnail thumbnail = embed.getThumbnail();
+        Embed.Author author = embed.getAuthor();
 
-                    jsonFields.add(jsonField);
-                }
+        if (footer != null) {
+            json.name("footer").beginObject();
+            json.name("text").value(footer.text());
+            json.name("icon_url").value(footer.iconUrl());
+            json.endObject();
+        }
 
-                jsonEmbed.add("fields", jsonFields);
-                embedObjects.add(jsonEmbed);
-            }
+        if (image != null) {
+            json.name("image").beginObject();
+            json.name("url").value(image.url());
+            json.endObject();
+        }
 
-            json.add("embeds", embedObjects);
+        if (thumbnail != null) {
+            json.name("thumbnail").beginObject();
+            json.name("url").value(thumbnail.url());
+            json.endObject();
         }
 
-        Request.Builder builder = new Request.Builder()
-                .url(url)
-                .post(RequestBody.create(json.toString(), OpenJdkProjectBot.APPLICATION_JSON));
+        if (author != null) {
+            json.name("author").beginObject();
+            json.name("name").value(author.name());
+            json.name("url").value(author.url());
+            json.name("icon_url").value(author.iconUrl());
+            json.endObject();
+        }
 
-        try (Response response = OpenJdkProjectBot.HTTP_CLIENT.newCall(builder.build()).execute()) {
-            if (!response.isSuccessful()) {
-                String body = response.body() != null ? response.body().string() : null;
-                throw new RuntimeException("Got: " + response.code() + " body: " + body);
-            }
+        json.name("fields").beginArray();
+        for (Embed.Field field : embed.getFields()) {
+            json.beginObject();
+            json.name("name").value(field.name());
+            json.name("value").value(field.value());
+            json.name("inline").value(field.inline());
+            json.endObject();
         }
+        json.endArray();
+        json.endObject();
     }
 
     public static class Embed {
@@ -0,0 +1,103 @@
+package net.covers1624.projectbot.discord;
+
+import net.covers1624.projectbot.discord.DiscordWebhook.Embed;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs sections of lines into as few webhook messages as Discord's limits allow.
+ * <p>
+ * Each section becomes one or more embeds, split between lines so no description
+ * exceeds {@link #MAX_DESCRIPTION}. Embeds are then packed into messages of at most
+ * {@link #MAX_EMBEDS} embeds and {@link #MAX_MESSAGE_CHARS} total characters.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class MessagePacker {
+
+    public static final int MAX_EMBEDS = 10;
+    public static final int MAX_TITLE = 256;
+    public static final int MAX_DESCRIPTION = 4096;
+    public static final int MAX_MESSAGE_CHARS = 6000;
+
+    private final String username;
+    private final String avatarUrl;
+    private final List<Embed> embeds = new ArrayList<>();
+
+    public MessagePacker(String username, String avatarUrl) {
+        this.username = username;
+        this.avatarUrl = avatarUrl;
+    }
+
+    /**
+     * Add a section, split across as many embeds as required.
+     *
+     * @param title  The embed title.
+     * @param url    The embed url.
+     * @param header The line to start the first embed's description with.
+     * @param lines  The lines of the section.
+     * @return The same packer.
+     */
+    public MessagePacker addSection(String title, String url, String header, List<String> lines) {
+        String contTitle = StringUtils.abbreviate(title + " (continued)", MAX_TITLE);
+        title = StringUtils.abbreviate(title, MAX_TITLE);
+
+        StringBuilder desc = new StringBuilder(header);
+        for (String line : lines) {
+            line = StringUtils.abbreviate(line, MAX_DESCRIPTION);
+            // Only needs a newline if there is something before it.
+            if (!desc.isEmpty() && desc.length() + 1 + line.length() > MAX_DESCRIPTION) {
+                embeds.add(new Embed().setTitle(title).setUrl(url).setDescription(desc.toString()));
+                title = contTitle;
+                desc.setLength(0);
+            }
+            if (!desc.isEmpty()) {
+                desc.append('\n');
+            }
+            desc.append(line);
+        }
+        embeds.add(new Embed().setTitle(title).setUrl(url).setDescription(desc.toString()));
+        return this;
+    }
+
+    /**
+     * @return If nothing has been added.
+     */
+    public boolean isEmpty() {
+        return embeds.isEmpty();
+    }
+
+    /**
+     * Pack all added sections into messages.
+     *
+     * @return The messages, in order.
+     */
+    public List<DiscordWebhook> pack() {
+        List<DiscordWebhook> messages = new ArrayList<>();
+        DiscordWebhook message = null;
+        int count = 0;
+        int chars = 0;
+        for (Embed embed : embeds) {
+            int embedChars = length(embed.getTitle()) + length(embed.getDescription());
+            if (message == null || count == MAX_EMBEDS || chars + embedChars > MAX_MESSAGE_CHARS) {
+                message = new DiscordWebhook()
+                        .setUsername(username)
+                        .setAvatarUrl(avatarUrl);
+                messages.add(message);
+                count = 0;
+                chars = 0;
+            }
+            message.addEmbed(embed);
+            count++;
+            chars += embedChars;
+        }
+        return messages;
+    }
+
+    private static int length(@Nullable String str) {
+        return str != null ? str.length() : 0;
+    }
+}
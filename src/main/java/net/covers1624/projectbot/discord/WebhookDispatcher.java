@@ -0,0 +1,288 @@
+package net.covers1624.projectbot.discord;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import net.covers1624.projectbot.OpenJdkProjectBot;
+import net.covers1624.projectbot.metrics.Counter;
+import net.covers1624.projectbot.metrics.Metrics;
+import net.covers1624.projectbot.metrics.Timer;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronously delivers webhook messages.
+ * <p>
+ * Each webhook url has its own queue, delivered in order. Different webhooks
+ * are delivered concurrently on a shared pool. Discord's rate limits are respected
+ * by pausing a webhook's queue on {@code 429} responses ({@code Retry-After}) and
+ * when a bucket is exhausted ({@code X-RateLimit-Remaining} / {@code X-RateLimit-Reset-After}).
+ * A global rate limit pauses every queue. Waiting out a rate limit never counts towards
+ * giving up on a message. Other failures are retried with exponential backoff, a webhook
+ * which keeps failing does not affect any other webhook. Client errors are never retried,
+ * the message is failed with a {@link RejectedException}.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class WebhookDispatcher {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long BASE_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Timer SEND_TIMER = Metrics.timer("projectbot_webhook_send_seconds", "Time spent on each webhook delivery attempt.");
+    private static final Counter FAILURES = Metrics.counter("projectbot_webhook_failures_total", "Webhook deliveries given up on.");
+    private static final Counter RATE_LIMITED = Metrics.counter("projectbot_webhook_rate_limited_total", "Webhook delivery attempts rejected with 429 Too Many Requests.");
+
+    private final ScheduledExecutorService executor;
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+    // System.nanoTime until which every queue is paused by a global rate limit.
+    private final AtomicLong globalPauseUntil = new AtomicLong(System.nanoTime());
+
+    public WebhookDispatcher(int threads) {
+        executor = Executors.newScheduledThreadPool(
+                Math.max(1, threads),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("Webhook Dispatcher %d")
+                        .setDaemon(true)
+                        .build()
+        );
+        Metrics.gauge("projectbot_webhook_queue_depth", "Webhook messages waiting to be delivered.", this::getQueueDepth);
+    }
+
+    /**
+     * Queue the given payload for delivery to all the given webhooks.
+     *
+     * @param urls    The webhook urls.
+     * @param payload The payload.
+     * @return A future completed once the payload is delivered to every webhook, or completed
+     * exceptionally once delivery to any webhook is given up on.
+     */
+    public CompletableFuture<Void> sendAll(Collection<String> urls, WebhookPayload payload) {
+        CompletableFuture<?>[] futures = new CompletableFuture[urls.size()];
+        int i = 0;
+        for (String url : urls) {
+            futures[i++] = send(url, payload);
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * Queue the given payload for delivery.
+     *
+     * @param url     The webhook url.
+     * @param payload The payload.
+     * @return A future completed once the payload is delivered, or completed
+     * exceptionally once delivery is given up on.
+     */
+    public CompletableFuture<Void> send(String url, WebhookPayload payload) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        targets.computeIfAbsent(url, Target::new)
+                .enqueue(new Delivery(payload.toRequestBody(), future));
+        return future;
+    }
+
+    /**
+     * @return The number of messages waiting to be delivered, across all webhooks.
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Target target : targets.values()) {
+            depth += target.queue.size();
+        }
+        return depth;
+    }
+
+    private static long parseSecondsAsMillis(@Nullable String header, long def) {
+        if (header == null) return def;
+        try {
+            return (long) Math.ceil(Double.parseDouble(header) * 1000);
+        } catch (NumberFormatException ex) {
+            return def;
+        }
+    }
+
+    // Discord flags global limits in a header, and in the json body.
+    private static boolean isGlobal(Response response, @Nullable String body) {
+        if ("true".equalsIgnoreCase(response.header("X-RateLimit-Global"))) return true;
+        if (body == null) return false;
+
+        try {
+            JsonElement json = JsonParser.parseString(body);
+            return json.isJsonObject()
+                    && json.getAsJsonObject().has("global")
+                    && json.getAsJsonObject().get("global").getAsBoolean();
+        } catch (JsonParseException | IllegalStateException | UnsupportedOperationException ex) {
+            return false;
+        }
+    }
+
+    private static long backoff(int attempt) {
+        return Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt, 20));
+    }
+
+    private class Target {
+
+        private final String url;
+        private final Queue<Delivery> queue = new ConcurrentLinkedQueue<>();
+        private boolean draining;
+
+        private Target(String url) {
+            this.url = url;
+        }
+
+        private void enqueue(Delivery delivery) {
+            queue.add(delivery);
+            synchronized (this) {
+                if (draining) return;
+                draining = true;
+            }
+            executor.execute(this::drain);
+        }
+
+        private void drain() {
+            Delivery delivery = queue.peek();
+            if (delivery == null) {
+                synchronized (this) {
+                    // Something may have been queued between the peek and taking the lock.
+                    if (queue.isEmpty()) {
+                        draining = false;
+                        return;
+                    }
+                }
+                executor.execute(this::drain);
+                return;
+            }
+
+            // Globally rate limited, nothing is sent until it's over.
+            long paused = globalPauseUntil.get() - System.nanoTime();
+            if (paused > 0) {
+                executor.schedule(this::drain, paused, TimeUnit.NANOSECONDS);
+                return;
+            }
+
+            long delay = deliver(delivery);
+            executor.schedule(this::drain, delay, TimeUnit.MILLISECONDS);
+        }
+
+        // Attempts the delivery, returning how long to wait before the next attempt.
+        private long deliver(Delivery delivery) {
+            Request request = new Request.Builder()
+                    .url(url)
+                    .post(delivery.body)
+                    .build();
+            long start = System.nanoTime();
+            try (Response response = OpenJdkProjectBot.httpClient().newCall(request).execute()) {
+                if (response.isSuccessful()) {
+                    complete(delivery, null);
+                    // Bucket exhausted, wait for it to reset before sending the next one.
+                    if ("0".equals(response.header("X-RateLimit-Remaining"))) {
+                        return parseSecondsAsMillis(response.header("X-RateLimit-Reset-After"), 0);
+                    }
+                    return 0;
+                }
+                ResponseBody body = response.body();
+                String bodyStr = body != null ? body.string() : null;
+                if (response.code() == 429) {
+                    // Not a failure, waiting it out doesn't count as an attempt.
+                    RATE_LIMITED.inc();
+                    long retryAfter = parseSecondsAsMillis(response.header("Retry-After"), backoff(delivery.rateLimits++));
+                    if (isGlobal(response, bodyStr)) {
+                        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfter);
+                        globalPauseUntil.accumulateAndGet(until, (a, b) -> b - a > 0 ? b : a);
+                        LOGGER.warn("Globally rate limited, pausing all webhooks for {}ms.", retryAfter);
+                    } else {
+                        LOGGER.warn("Rate limited by webhook, retrying in {}ms.", retryAfter);
+                    }
+                    return retryAfter;
+                }
+
+                String message = "Got: " + response.code() + " body: " + bodyStr;
+                if (response.code() >= 500) {
+                    return retry(delivery, new IOException(message));
+                }
+                // Any other client error is not going to succeed if we try again.
+                complete(delivery, new RejectedException(response.code(), message));
+                return 0;
+            } catch (IOException ex) {
+                return retry(delivery, ex);
+            } catch (RuntimeException ex) {
+                // Never let a bad delivery wedge the queue.
+                complete(delivery, ex);
+                return 0;
+            } finally {
+                SEND_TIMER.recordSince(start);
+            }
+        }
+
+        // Counts a failed attempt, returning how long to back off, or 0 once given up on.
+        private long retry(Delivery delivery, Throwable cause) {
+            delivery.attempts++;
+            if (delivery.attempts < MAX_ATTEMPTS) return backoff(delivery.attempts);
+
+            complete(delivery, cause);
+            return 0;
+        }
+
+        private void complete(Delivery delivery, @Nullable Throwable failure) {
+            queue.remove(delivery);
+            if (failure == null) {
+                delivery.future.complete(null);
+            } else {
+                FAILURES.inc();
+                delivery.future.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private static class Delivery {
+
+        private final RequestBody body;
+        private final CompletableFuture<Void> future;
+        // Failed attempts, rate limits aren't counted.
+        private int attempts;
+        private int rateLimits;
+
+        private Delivery(RequestBody body, CompletableFuture<Void> future) {
+            this.body = body;
+            this.future = future;
+        }
+    }
+
+    /**
+     * Thrown when a webhook rejects a message with a client error, such as the webhook
+     * being deleted ({@code 404}) or the message being invalid ({@code 400}).
+     * Sending the same message again will fail the same way.
+     */
+    public static class RejectedException extends IOException {
+
+        private final int code;
+
+        public RejectedException(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+
+        /**
+         * @return The status code of the response.
+         */
+        public int getCode() {
+            return code;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package net.covers1624.projectbot.discord;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An encoded, immutable webhook message.
+ * <p>
+ * Encoded once by {@link DiscordWebhook#encode()}, then shared by
+ * every webhook url the message is sent to.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public final class WebhookPayload {
+
+    private static final MediaType APPLICATION_JSON = MediaType.get("application/json");
+
+    private final byte[] bytes;
+    private final RequestBody body;
+
+    WebhookPayload(byte[] bytes) {
+        this.bytes = bytes;
+        body = RequestBody.create(bytes, APPLICATION_JSON);
+    }
+
+    /**
+     * @return The encoded size of the payload in bytes.
+     */
+    public int size() {
+        return bytes.length;
+    }
+
+    /**
+     * @return The json of this payload.
+     */
+    public String toJson() {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The request body for this payload. Safe to reuse for any number of requests.
+     */
+    public RequestBody toRequestBody() {
+        return body;
+    }
+}
@@ -0,0 +1,205 @@
+package net.covers1624.projectbot.history;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import net.covers1624.projectbot.util.FileUtils;
+import net.covers1624.quack.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * An append-only log of every detected change, indexed for queries.
+ * <p>
+ * Each {@link HistoryEvent} is appended to {@code changes.log} as a single json line.
+ * The whole log is held in memory, ordered by time, along with per release and per JEP
+ * lists, so queries never touch the disk or the HTML archive.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class ChangeHistory {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new Gson();
+    private static final Comparator<HistoryEvent> BY_TIME = Comparator.comparingLong(e -> e.time);
+
+    private final Path logFile;
+
+    // Every event, oldest first.
+    private final List<HistoryEvent> events = new ArrayList<>();
+    // The same events by release and by JEP id, each oldest first.
+    // Moves are under both the release moved from and to.
+    private final ListMultimap<String, HistoryEvent> byRelease = ArrayListMultimap.create();
+    private final ListMultimap<String, HistoryEvent> byJep = ArrayListMultimap.create();
+
+    public ChangeHistory(Path dir) throws IOException {
+        logFile = dir.resolve("changes.log");
+        if (loadLog()) {
+            // Torn or corrupt lines, most likely a crash mid append. Rewrite without them.
+            rewriteLog();
+        }
+        reindex();
+    }
+
+    /**
+     * Durably append events.
+     *
+     * @param toAppend The events.
+     */
+    public synchronized void append(List<HistoryEvent> toAppend) throws IOException {
+        if (toAppend.isEmpty()) return;
+
+        StringBuilder sb = new StringBuilder();
+        for (HistoryEvent event : toAppend) {
+            sb.append(GSON.toJson(event)).append('\n');
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(IOUtils.makeParents(logFile), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        long last = events.isEmpty() ? Long.MIN_VALUE : events.get(events.size() - 1).time;
+        events.addAll(toAppend);
+        List<HistoryEvent> sorted = new ArrayList<>(toAppend);
+        sorted.sort(BY_TIME);
+        if (sorted.get(0).time < last) {
+            // Older than what we have, only happens when backfilling.
+            reindex();
+            return;
+        }
+        for (HistoryEvent event : sorted) {
+            index(event);
+        }
+    }
+
+    /**
+     * Find events.
+     *
+     * @param from    The earliest time, inclusive, in epoch milliseconds.
+     * @param to      The latest time, exclusive, in epoch milliseconds.
+     * @param release Only events concerning this release, or {@code null} for every release.
+     * @param jep     Only events for this JEP id, or {@code null} for every JEP and listing change.
+     * @param limit   The maximum number of events to return.
+     * @return The events, oldest first.
+     */
+    public synchronized List<HistoryEvent> query(long from, long to, @Nullable String release, @Nullable String jep, int limit) {
+        // Walk whichever index is narrowest, filter by the other.
+        List<HistoryEvent> candidates;
+        if (jep != null) {
+            candidates = byJep.get(jep);
+            if (release != null && byRelease.get(release).size() < candidates.size()) {
+                candidates = byRelease.get(release);
+            }
+        } else if (release != null) {
+            candidates = byRelease.get(release);
+        } else {
+            candidates = events;
+        }
+
+        List<HistoryEvent> found = new ArrayList<>();
+        for (int i = lowerBound(candidates, from); i < candidates.size() && found.size() < limit; i++) {
+            HistoryEvent event = candidates.get(i);
+            if (event.time >= to) break;
+            if (jep != null && !jep.equals(event.jep)) continue;
+            if (release != null && !event.isFor(release)) continue;
+
+            found.add(event);
+        }
+        return found;
+    }
+
+    /**
+     * @return A copy of every event, oldest first.
+     */
+    public synchronized List<HistoryEvent> getEvents() {
+        return List.copyOf(events);
+    }
+
+    /**
+     * @return The number of events.
+     */
+    public synchronized int size() {
+        return events.size();
+    }
+
+    // The index of the first event at or after the given time.
+    private static int lowerBound(List<HistoryEvent> events, long time) {
+        int lo = 0;
+        int hi = events.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (events.get(mid).time < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void reindex() {
+        // Stable, so events from the same batch keep their order.
+        events.sort(BY_TIME);
+        byRelease.clear();
+        byJep.clear();
+        for (HistoryEvent event : events) {
+            index(event);
+        }
+    }
+
+    private void index(HistoryEvent event) {
+        byRelease.put(event.release, event);
+        if (event.from != null && event.type == HistoryEvent.Type.MOVED) {
+            byRelease.put(event.from, event);
+        }
+        if (event.jep != null) {
+            byJep.put(event.jep, event);
+        }
+    }
+
+    // Returns true if any lines had to be skipped.
+    private boolean loadLog() throws IOException {
+        if (Files.notExists(logFile)) return false;
+
+        boolean skipped = false;
+        try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+            String str;
+            while ((str = reader.readLine()) != null) {
+                if (str.isBlank()) continue;
+                try {
+                    HistoryEvent event = GSON.fromJson(str, HistoryEvent.class);
+                    if (event == null || event.type == null || event.release == null) throw new JsonParseException("Missing type or release.");
+                    events.add(event);
+                } catch (JsonParseException ex) {
+                    LOGGER.warn("Skipping unreadable history entry.", ex);
+                    skipped = true;
+                }
+            }
+        }
+        return skipped;
+    }
+
+    private void rewriteLog() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (HistoryEvent event : events) {
+            sb.append(GSON.toJson(event)).append('\n');
+        }
+        FileUtils.writeAtomic(logFile, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
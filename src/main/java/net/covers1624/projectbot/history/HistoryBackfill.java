@@ -0,0 +1,274 @@
+package net.covers1624.projectbot.history;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.covers1624.projectbot.checker.ChangeBatch;
+import net.covers1624.projectbot.checker.JepTracker;
+import net.covers1624.projectbot.checker.ProjectChecker;
+import net.covers1624.projectbot.checker.ProjectChecker.JEPChange;
+import net.covers1624.projectbot.checker.ProjectListChecker;
+import net.covers1624.projectbot.checker.ProjectListChecker.ProjectListChange;
+import net.covers1624.projectbot.store.BackupStore;
+import net.covers1624.projectbot.watch.EntryChange;
+import net.covers1624.projectbot.watch.WatchedPage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Rebuilds the {@link ChangeHistory} from archived page bodies.
+ * <p>
+ * Each page's archived snapshots are gathered from the {@link BackupStore}, and from the
+ * {@code backups/} and {@code prev.html} files left in each page's cache directory by older
+ * versions. Pages are parsed and diffed concurrently, snapshot by snapshot, with the same
+ * parsers as live checks. Changes found at the same time on different releases are then
+ * paired into moves, as a live cycle would. The earliest snapshot of each page is diffed
+ * against nothing, its contents are recorded as added when it was taken. Events already
+ * in the history are skipped, so backfilling again only adds what is missing.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class HistoryBackfill {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    // The page name the BackupStore uses for the Project listing.
+    private static final String LIST_PAGE = "list";
+    // The cache directory of the Project listing.
+    private static final String LIST_DIR = "lists";
+    // Cache directories which are not pages.
+    private static final Set<String> NOT_PAGES = Set.of("backups", "jeps", "outbox", "history", "feed", "watches");
+
+    private final Path cacheDir;
+    @Nullable
+    private final BackupStore backupStore;
+    private final String jdkListUrl;
+    private final ChangeHistory history;
+
+    public HistoryBackfill(Path cacheDir, @Nullable BackupStore backupStore, String jdkListUrl, ChangeHistory history) {
+        this.cacheDir = cacheDir;
+        this.backupStore = backupStore;
+        this.jdkListUrl = jdkListUrl;
+        this.history = history;
+    }
+
+    /**
+     * Backfill the history.
+     *
+     * @param threads The number of pages to parse concurrently.
+     * @return The number of events added.
+     */
+    public int run(int threads) throws IOException, InterruptedException {
+        Map<String, List<Snapshot>> pages = findSnapshots();
+        LOGGER.info("Backfilling history from {} snapshots of {} pages.", pages.values().stream().mapToInt(List::size).sum(), pages.size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, threads),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("History Backfill %d")
+                        .setDaemon(true)
+                        .build()
+        );
+        // Time to the changes found at that time, across every page.
+        SortedMap<Long, Cycle> cycles = new TreeMap<>();
+        try {
+            List<Future<List<Diff>>> futures = new ArrayList<>();
+            for (Map.Entry<String, List<Snapshot>> entry : pages.entrySet()) {
+                futures.add(executor.submit(() -> diffPage(entry.getKey(), entry.getValue())));
+            }
+            for (Future<List<Diff>> future : futures) {
+                List<Diff> diffs;
+                try {
+                    diffs = future.get();
+                } catch (ExecutionException ex) {
+                    throw new IOException("Failed to backfill page.", ex.getCause());
+                }
+                for (Diff diff : diffs) {
+                    Cycle cycle = cycles.computeIfAbsent(diff.time, e -> new Cycle());
+                    cycle.listChanges.addAll(diff.listChanges);
+                    if (!diff.jepChanges.isEmpty()) {
+                        cycle.jepChanges.put(diff.page, diff.jepChanges);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Set<HistoryEvent> existing = new HashSet<>(history.getEvents());
+        List<HistoryEvent> events = new ArrayList<>();
+        for (Map.Entry<Long, Cycle> entry : cycles.entrySet()) {
+            Cycle cycle = entry.getValue();
+            JepTracker.Moves moves = JepTracker.detectMoves(cycle.jepChanges);
+            ChangeBatch batch = new ChangeBatch(entry.getKey(), cycle.listChanges, moves.changes(), moves.moves());
+            for (HistoryEvent event : HistoryEvent.fromBatch(batch)) {
+                if (!existing.contains(event)) {
+                    events.add(event);
+                }
+            }
+        }
+        history.append(events);
+        LOGGER.info("Backfilled {} history events.", events.size());
+        return events.size();
+    }
+
+    private Map<String, List<Snapshot>> findSnapshots() throws IOException {
+        Map<String, List<Snapshot>> pages = new TreeMap<>();
+        if (backupStore != null) {
+            for (BackupStore.Entry entry : backupStore.getEntries()) {
+                pages.computeIfAbsent(entry.page, e -> new ArrayList<>()).add(new Snapshot(entry.time, null, entry.hash));
+            }
+        }
+        if (Files.isDirectory(cacheDir)) {
+            try (Stream<Path> dirs = Files.list(cacheDir)) {
+                for (Path dir : (Iterable<Path>) dirs::iterator) {
+                    String name = dir.getFileName().toString();
+                    if (!Files.isDirectory(dir) || NOT_PAGES.contains(name)) continue;
+
+                    List<Snapshot> legacy = findLegacySnapshots(dir);
+                    if (!legacy.isEmpty()) {
+                        pages.computeIfAbsent(name.equals(LIST_DIR) ? LIST_PAGE : name, e -> new ArrayList<>()).addAll(legacy);
+                    }
+                }
+            }
+        }
+        for (List<Snapshot> snapshots : pages.values()) {
+            snapshots.sort(Comparator.comparingLong(Snapshot::time));
+        }
+        return pages;
+    }
+
+    // Older versions moved prev.html to backups/<time>.html when a page changed, then copied the new page
+    // to prev.html. Each file's modified time is when its content was first seen. The file names record the
+    // exact time of the cycle which replaced them, the same on every page, but without the day.
+    private static List<Snapshot> findLegacySnapshots(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Path backups = dir.resolve("backups");
+        if (Files.isDirectory(backups)) {
+            try (Stream<Path> stream = Files.list(backups)) {
+                stream.filter(e -> e.getFileName().toString().endsWith(".html")).forEach(files::add);
+            }
+        }
+        Path prev = dir.resolve("prev.html");
+        if (Files.exists(prev)) {
+            files.add(prev);
+        }
+        if (files.isEmpty()) return List.of();
+
+        Map<Path, Long> modified = new HashMap<>();
+        for (Path file : files) {
+            modified.put(file, Files.getLastModifiedTime(file).toMillis());
+        }
+        files.sort(Comparator.comparingLong(modified::get));
+
+        List<Snapshot> snapshots = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            long time = modified.get(file);
+            if (i > 0) {
+                // This content replaced the previous file, at the time in its name.
+                time = resolveCycleTime(files.get(i - 1), time);
+            }
+            snapshots.add(new Snapshot(time, file, null));
+        }
+        return snapshots;
+    }
+
+    // Combine a yyyy-MM-HH-mm-ss file name with the day of the modified time it should be close to.
+    private static long resolveCycleTime(Path file, long modified) {
+        String name = file.getFileName().toString();
+        String[] parts = name.substring(0, name.length() - ".html".length()).split("-");
+        if (parts.length != 5) return modified;
+
+        try {
+            ZoneId zone = ZoneId.systemDefault();
+            LocalDateTime near = LocalDateTime.ofInstant(Instant.ofEpochMilli(modified), zone);
+            LocalDateTime time = LocalDateTime.of(
+                    Integer.parseInt(parts[0]),
+                    Integer.parseInt(parts[1]),
+                    near.getDayOfMonth(),
+                    Integer.parseInt(parts[2]),
+                    Integer.parseInt(parts[3]),
+                    Integer.parseInt(parts[4])
+            );
+            // The cycle started before the file was written, possibly just before midnight.
+            if (time.isAfter(near.plusHours(1))) {
+                time = time.minusDays(1);
+            }
+            long resolved = time.atZone(zone).toInstant().toEpochMilli();
+            // Anything else means the file was touched since, trust the modified time.
+            return Math.abs(modified - resolved) <= TimeUnit.HOURS.toMillis(1) ? resolved : modified;
+        } catch (RuntimeException ex) {
+            return modified;
+        }
+    }
+
+    private List<Diff> diffPage(String page, List<Snapshot> snapshots) throws IOException {
+        boolean list = page.equals(LIST_PAGE);
+        String url = list ? jdkListUrl : jdkListUrl + page;
+
+        List<Diff> diffs = new ArrayList<>();
+        // Diffed as live checks do, on the entries each page's checker stores.
+        Map<String, String> prevEntries = Map.of();
+        for (Snapshot snapshot : snapshots) {
+            String html;
+            try {
+                html = snapshot.read(backupStore);
+            } catch (IOException ex) {
+                LOGGER.warn("Skipping unreadable snapshot of {} at {}.", page, Instant.ofEpochMilli(snapshot.time), ex);
+                continue;
+            }
+            Map<String, String> entries = list
+                    ? ProjectListChecker.toEntries(ProjectListChecker.extractVersions(html, url))
+                    : ProjectChecker.toEntries(ProjectChecker.extractJEPs(html, url));
+            List<EntryChange> changes = WatchedPage.diff(prevEntries, entries);
+            prevEntries = entries;
+            if (list) {
+                List<ProjectListChange> listChanges = ProjectListChecker.toListChanges(changes);
+                if (!listChanges.isEmpty()) {
+                    diffs.add(new Diff(snapshot.time, page, listChanges, List.of()));
+                }
+            } else {
+                List<JEPChange> jepChanges = ProjectChecker.toJEPChanges(changes);
+                if (!jepChanges.isEmpty()) {
+                    diffs.add(new Diff(snapshot.time, page, List.of(), jepChanges));
+                }
+            }
+        }
+        return diffs;
+    }
+
+    /**
+     * A single archived page body.
+     *
+     * @param time When the body was first seen.
+     * @param file The legacy backup file, or {@code null} if it's in the {@link BackupStore}.
+     * @param hash The {@link BackupStore} hash, or {@code null} if it's a legacy backup file.
+     */
+    private record Snapshot(long time, @Nullable Path file, @Nullable String hash) {
+
+        private String read(@Nullable BackupStore store) throws IOException {
+            if (file != null) return Files.readString(file);
+
+            assert store != null && hash != null;
+            return store.read(hash);
+        }
+    }
+
+    private record Diff(long time, String page, List<ProjectListChange> listChanges, List<JEPChange> jepChanges) { }
+
+    private static class Cycle {
+
+        private final List<ProjectListChange> listChanges = new ArrayList<>();
+        private final Map<String, List<JEPChange>> jepChanges = new TreeMap<>();
+    }
+}
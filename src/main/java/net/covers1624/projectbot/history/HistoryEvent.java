@@ -0,0 +1,172 @@
+package net.covers1624.projectbot.history;
+
+import net.covers1624.projectbot.checker.ChangeBatch;
+import net.covers1624.projectbot.checker.JepTracker.JEPMove;
+import net.covers1624.projectbot.checker.ProjectChecker.JEPChange;
+import net.covers1624.projectbot.checker.ProjectListChecker.ProjectListChange;
+import net.covers1624.projectbot.watch.EntryChange;
+import net.covers1624.projectbot.watch.PageChange;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A single change in the {@link ChangeHistory}.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class HistoryEvent {
+
+    /**
+     * When the change was detected, in epoch milliseconds.
+     */
+    public long time;
+    public Type type;
+    /**
+     * The release changed. For {@link Type#MOVED} the release the JEP moved to, for {@link Type#PAGE} the watch name.
+     */
+    public String release;
+    /**
+     * The JEP id, {@code null} for {@link Type#LISTING} and {@link Type#PAGE}.
+     */
+    @Nullable
+    public String jep;
+    /**
+     * The JEP title, or the entry key for {@link Type#PAGE}. {@code null} for {@link Type#LISTING}.
+     */
+    @Nullable
+    public String desc;
+    /**
+     * For {@link Type#LISTING} and {@link Type#PAGE} the old value, for {@link Type#MOVED}
+     * the release the JEP moved from, otherwise {@code null}.
+     */
+    @Nullable
+    public String from;
+    /**
+     * For {@link Type#LISTING} and {@link Type#PAGE} the new value, otherwise {@code null}.
+     */
+    @Nullable
+    public String to;
+
+    /**
+     * Flatten a batch into events.
+     *
+     * @param batch The batch.
+     * @return The events.
+     */
+    public static List<HistoryEvent> fromBatch(ChangeBatch batch) {
+        List<HistoryEvent> events = new ArrayList<>();
+        for (ProjectListChange change : batch.listChanges()) {
+            events.add(listing(batch.time(), change));
+        }
+        for (Map.Entry<String, List<JEPChange>> entry : batch.jepChanges().entrySet()) {
+            for (JEPChange change : entry.getValue()) {
+                events.add(jep(batch.time(), entry.getKey(), change));
+            }
+        }
+        for (JEPMove move : batch.jepMoves()) {
+            events.add(move(batch.time(), move));
+        }
+        for (PageChange page : batch.pageChanges()) {
+            for (EntryChange change : page.changes()) {
+                events.add(page(batch.time(), page.page(), change));
+            }
+        }
+        return events;
+    }
+
+    public static HistoryEvent listing(long time, ProjectListChange change) {
+        HistoryEvent event = new HistoryEvent();
+        event.time = time;
+        event.type = Type.LISTING;
+        event.release = change.version();
+        event.from = change.from();
+        event.to = change.to();
+        return event;
+    }
+
+    public static HistoryEvent jep(long time, String release, JEPChange change) {
+        HistoryEvent event = new HistoryEvent();
+        event.time = time;
+        event.type = change.addition() ? Type.ADDED : Type.REMOVED;
+        event.release = release;
+        event.jep = change.id();
+        event.desc = change.desc();
+        return event;
+    }
+
+    public static HistoryEvent move(long time, JEPMove move) {
+        HistoryEvent event = new HistoryEvent();
+        event.time = time;
+        event.type = Type.MOVED;
+        event.release = move.to();
+        event.jep = move.id();
+        event.desc = move.desc();
+        event.from = move.from();
+        return event;
+    }
+
+    public static HistoryEvent page(long time, String page, EntryChange change) {
+        HistoryEvent event = new HistoryEvent();
+        event.time = time;
+        event.type = Type.PAGE;
+        event.release = page;
+        event.desc = change.key();
+        event.from = change.from();
+        event.to = change.to();
+        return event;
+    }
+
+    /**
+     * @param release The release.
+     * @return If this event concerns the given release.
+     */
+    public boolean isFor(String release) {
+        return this.release.equals(release) || type == Type.MOVED && release.equals(from);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof HistoryEvent other)) return false;
+
+        return time == other.time
+                && type == other.type
+                && Objects.equals(release, other.release)
+                && Objects.equals(jep, other.jep)
+                && Objects.equals(desc, other.desc)
+                && Objects.equals(from, other.from)
+                && Objects.equals(to, other.to);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(time, type, release, jep, desc, from, to);
+    }
+
+    public enum Type {
+        /**
+         * A JEP was added to a release.
+         */
+        ADDED,
+        /**
+         * A JEP was removed from a release.
+         */
+        REMOVED,
+        /**
+         * A JEP was retargeted from one release to another.
+         */
+        MOVED,
+        /**
+         * A release's status on the Project listing changed, or it was added or removed.
+         */
+        LISTING,
+        /**
+         * An entry on an extra watched page changed. The release is the watch name, the description the entry key.
+         */
+        PAGE
+    }
+}
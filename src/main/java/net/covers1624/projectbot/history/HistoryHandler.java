@@ -0,0 +1,88 @@
+package net.covers1624.projectbot.history;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import net.covers1624.projectbot.http.LocalServer;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves {@link ChangeHistory} queries as json.
+ * <p>
+ * Accepts the query parameters {@code from} and {@code to} (epoch milliseconds or ISO-8601 instants),
+ * {@code release}, {@code jep} and {@code limit}, all optional.
+ * For example {@code /history?jep=445&release=21}.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class HistoryHandler implements HttpHandler {
+
+    private static final Gson GSON = new Gson();
+    private static final String CONTENT_TYPE = "application/json; charset=utf-8";
+
+    private static final int DEFAULT_LIMIT = 1000;
+    private static final int MAX_LIMIT = 10000;
+
+    private final ChangeHistory history;
+
+    public HistoryHandler(ChangeHistory history) {
+        this.history = history;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        long from;
+        long to;
+        int limit;
+        try {
+            from = parseTime(params.get("from"), Long.MIN_VALUE);
+            to = parseTime(params.get("to"), Long.MAX_VALUE);
+            String limitStr = params.get("limit");
+            limit = limitStr != null ? Math.min(MAX_LIMIT, Integer.parseInt(limitStr)) : DEFAULT_LIMIT;
+        } catch (NumberFormatException | DateTimeParseException ex) {
+            LocalServer.respond(exchange, 400, "text/plain", "Invalid query: " + ex.getMessage());
+            return;
+        }
+
+        Response response = new Response();
+        response.events = history.query(from, to, params.get("release"), params.get("jep"), Math.max(0, limit));
+        LocalServer.respond(exchange, 200, CONTENT_TYPE, GSON.toJson(response));
+    }
+
+    private static long parseTime(@Nullable String str, long def) {
+        if (str == null) return def;
+        if (!str.isEmpty() && str.chars().allMatch(Character::isDigit)) return Long.parseLong(str);
+
+        return Instant.parse(str).toEpochMilli();
+    }
+
+    private static Map<String, String> parseQuery(@Nullable String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) return params;
+
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) continue;
+
+            int eq = pair.indexOf('=');
+            String key = eq == -1 ? pair : pair.substring(0, eq);
+            String value = eq == -1 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static class Response {
+
+        public List<HistoryEvent> events;
+    }
+}
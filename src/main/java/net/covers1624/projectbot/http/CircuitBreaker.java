@@ -0,0 +1,80 @@
+package net.covers1624.projectbot.http;
+
+/**
+ * Tracks the health of a single upstream host.
+ * <p>
+ * After {@code threshold} consecutive failures the breaker opens and requests are
+ * failed fast. Once the open period has passed a single probe request is let through,
+ * success closes the breaker again, failure re-opens it for twice as long, up to {@code maxOpenNanos}.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class CircuitBreaker {
+
+    private final int threshold;
+    private final long baseOpenNanos;
+    private final long maxOpenNanos;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openNanos;
+    private long openUntil;
+
+    public CircuitBreaker(int threshold, long baseOpenNanos, long maxOpenNanos) {
+        this.threshold = Math.max(1, threshold);
+        this.baseOpenNanos = baseOpenNanos;
+        this.maxOpenNanos = Math.max(baseOpenNanos, maxOpenNanos);
+        openNanos = baseOpenNanos;
+    }
+
+    /**
+     * @return If a request may be made now. If this returns {@code true}, the
+     * request's outcome must be reported via {@link #recordSuccess} or {@link #recordFailure}.
+     */
+    public synchronized boolean tryAcquire() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> {
+                if (System.nanoTime() - openUntil < 0) yield false;
+                state = State.PROBING;
+                yield true;
+            }
+            // Only the one probe at a time.
+            case PROBING -> false;
+        };
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        openNanos = baseOpenNanos;
+    }
+
+    public synchronized void recordFailure() {
+        failures++;
+        if (state == State.PROBING) {
+            openNanos = Math.min(maxOpenNanos, openNanos * 2);
+            open();
+        } else if (state == State.CLOSED && failures >= threshold) {
+            open();
+        }
+    }
+
+    /**
+     * @return If requests are currently being failed fast.
+     */
+    public synchronized boolean isOpen() {
+        return state != State.CLOSED;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openUntil = System.nanoTime() + openNanos;
+    }
+
+    private enum State {
+        CLOSED,
+        OPEN,
+        PROBING
+    }
+}
@@ -0,0 +1,62 @@
+package net.covers1624.projectbot.http;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how hard a single host is hit.
+ * <p>
+ * At most a fixed number of requests are in flight to the host at once, and request
+ * starts are spaced at least a fixed interval apart.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+final class HostLimiter {
+
+    private final Semaphore permits;
+    private final long intervalNanos;
+
+    // System.nanoTime the next request may start at.
+    private long nextStart;
+
+    HostLimiter(int maxConcurrent, long intervalNanos) {
+        permits = new Semaphore(Math.max(1, maxConcurrent), true);
+        this.intervalNanos = intervalNanos;
+    }
+
+    /**
+     * Wait for a turn to make a request, {@link #release} must be called once it's done.
+     *
+     * @param timeoutNanos The longest to wait.
+     * @return If a turn was acquired before the timeout.
+     */
+    boolean acquire(long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        if (!permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) return false;
+        if (intervalNanos <= 0) return true;
+
+        long start;
+        synchronized (this) {
+            start = Math.max(System.nanoTime(), nextStart);
+            nextStart = start + intervalNanos;
+        }
+        long wait = start - System.nanoTime();
+        if (wait > 0) {
+            if (start - deadline > 0) {
+                permits.release();
+                return false;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException ex) {
+                permits.release();
+                throw ex;
+            }
+        }
+        return true;
+    }
+
+    void release() {
+        permits.release();
+    }
+}
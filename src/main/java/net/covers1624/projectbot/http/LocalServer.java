@@ -0,0 +1,126 @@
+package net.covers1624.projectbot.http;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * A small HTTP server for local endpoints, such as metrics.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class LocalServer {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final HttpServer server;
+
+    public LocalServer(String host, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.setExecutor(Executors.newFixedThreadPool(
+                2,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("Local Server %d")
+                        .setDaemon(true)
+                        .build()
+        ));
+    }
+
+    /**
+     * Serve {@code GET} requests for the given path.
+     *
+     * @param path    The path.
+     * @param handler The handler.
+     * @return The same server.
+     */
+    public LocalServer addHandler(String path, HttpHandler handler) {
+        server.createContext(path, exchange -> {
+            try (exchange) {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    respond(exchange, 405, "text/plain", "Method not allowed.");
+                    return;
+                }
+                handler.handle(exchange);
+            } catch (Throwable ex) {
+                LOGGER.error("Error handling request for {}.", exchange.getRequestURI(), ex);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Serve long-lived {@code GET} requests for the given path, such as event streams.
+     * <p>
+     * Unlike {@link #addHandler}, the exchange is not closed once the handler returns,
+     * the handler takes ownership of it. It is only closed here if the handler throws.
+     *
+     * @param path    The path.
+     * @param handler The handler.
+     * @return The same server.
+     */
+    public LocalServer addStreamHandler(String path, HttpHandler handler) {
+        server.createContext(path, exchange -> {
+            try {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    try (exchange) {
+                        respond(exchange, 405, "text/plain", "Method not allowed.");
+                    }
+                    return;
+                }
+                handler.handle(exchange);
+            } catch (Throwable ex) {
+                LOGGER.error("Error handling request for {}.", exchange.getRequestURI(), ex);
+                exchange.close();
+            }
+        });
+        return this;
+    }
+
+    public void start() {
+        server.start();
+        LOGGER.info("Serving local endpoints on {}.", server.getAddress());
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * Send a complete response.
+     *
+     * @param exchange    The exchange.
+     * @param code        The status code.
+     * @param contentType The content type.
+     * @param body        The body.
+     */
+    public static void respond(HttpExchange exchange, int code, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+        if (body.length != 0) {
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    /**
+     * Send a complete plain text response.
+     *
+     * @param exchange    The exchange.
+     * @param code        The status code.
+     * @param contentType The content type.
+     * @param body        The body.
+     */
+    public static void respond(HttpExchange exchange, int code, String contentType, String body) throws IOException {
+        respond(exchange, code, contentType, body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,306 @@
+package net.covers1624.projectbot.http;
+
+import net.covers1624.projectbot.Config;
+import net.covers1624.projectbot.metrics.Counter;
+import net.covers1624.projectbot.metrics.Metrics;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Makes requests to upstream pages, without letting a degraded host stall an update cycle.
+ * <p>
+ * Every request has a deadline covering the whole call, including reading the body,
+ * bounded by both {@link Config.Fetch#requestTimeoutSeconds} and whatever is left of
+ * the current cycle's budget. Transient failures are retried with backoff, and each
+ * host has a {@link CircuitBreaker} so requests fail fast while it is unhealthy. Requests to each
+ * host are limited by a {@link HostLimiter}, and identical requests made at the same time can be
+ * coalesced into a single request with {@link #executeShared}.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class UpstreamClient {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final long BASE_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final Counter RETRIES = Metrics.counter("projectbot_fetch_retries_total", "Upstream requests retried after a transient failure.");
+    private static final Counter REJECTED = Metrics.counter("projectbot_fetch_rejected_total", "Upstream requests failed fast by an open circuit breaker or exhausted cycle budget.");
+    private static final Counter COALESCED = Metrics.counter("projectbot_fetch_coalesced_total", "Upstream requests answered by an identical request already in flight.");
+
+    private final Supplier<OkHttpClient> client;
+    private final Config.Fetch config;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Map<String, HostLimiter> limiters = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Set<Call> activeCalls = ConcurrentHashMap.newKeySet();
+
+    // System.nanoTime the current cycle must be done by, 0 when there is no cycle budget.
+    private volatile long cycleDeadline;
+    // If the current cycle's budget was cut short by expireCycle.
+    private volatile boolean cycleExpired;
+
+    /**
+     * @param client Supplies the client, only called once a request is made.
+     * @param config The fetch config.
+     */
+    public UpstreamClient(Supplier<OkHttpClient> client, Config.Fetch config) {
+        this.client = client;
+        this.config = config;
+    }
+
+    /**
+     * Start a new update cycle, all requests until the next call to {@link #endCycle} share its budget.
+     */
+    public void beginCycle() {
+        cycleExpired = false;
+        cycleDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(Math.max(1, config.cycleBudgetSeconds));
+    }
+
+    /**
+     * Use up the rest of the current cycle's budget, cancelling anything still in flight.
+     * <p>
+     * Every request until the next call to {@link #beginCycle} fails fast.
+     */
+    public void expireCycle() {
+        cycleExpired = true;
+        cancelCalls();
+    }
+
+    /**
+     * Ends the current update cycle, cancelling anything still in flight.
+     */
+    public void endCycle() {
+        cycleDeadline = 0;
+        cycleExpired = false;
+        cancelCalls();
+    }
+
+    /**
+     * @return How long is left of the current cycle's budget, in nanoseconds. {@link Long#MAX_VALUE} outside a cycle.
+     */
+    public long getRemainingNanos() {
+        if (cycleExpired) return 0;
+
+        long deadline = cycleDeadline;
+        if (deadline == 0) return Long.MAX_VALUE;
+
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    /**
+     * Execute the given request, sharing the result with any identical request already in flight.
+     * <p>
+     * Requests are identical if they are for the same url with the same conditional headers.
+     * Identical requests must use equivalent handlers, and the result may be shared between
+     * callers, so must not be modified.
+     *
+     * @param request The request.
+     * @param handler Consumes the response, the response is closed once it returns.
+     * @return The result of the handler, which may be {@code null}.
+     * @throws IOException See {@link #execute}.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T> T executeShared(Request request, ResponseHandler<T> handler) throws IOException {
+        String key = request.url() + "|" + request.header("If-None-Match") + "|" + request.header("If-Modified-Since");
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            COALESCED.inc();
+            try {
+                return (T) existing.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for " + request.url());
+            } catch (ExecutionException ex) {
+                throw new IOException("Failed to fetch " + request.url(), ex.getCause());
+            }
+        }
+
+        try {
+            T result = execute(request, handler);
+            future.complete(result);
+            return result;
+        } catch (IOException | RuntimeException ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Execute the given request, retrying transient failures.
+     * <p>
+     * Connection failures, {@code 429} and {@code 5xx} responses, and exceptions thrown by the handler
+     * are treated as transient. {@code 2xx} and {@code 304} responses are passed to the handler, any
+     * other response fails immediately.
+     *
+     * @param request The request.
+     * @param handler Consumes the response, the response is closed once it returns.
+     * @return The result of the handler, which may be {@code null}.
+     * @throws IOException If the request ultimately failed, the host's circuit breaker
+     *                     is open, or the cycle budget ran out.
+     */
+    @Nullable
+    public <T> T execute(Request request, ResponseHandler<T> handler) throws IOException {
+        String host = request.url().host();
+        CircuitBreaker breaker = breakers.computeIfAbsent(host, this::newBreaker);
+
+        IOException failure = null;
+        for (int attempt = 0; attempt <= Math.max(0, config.maxRetries); attempt++) {
+            if (attempt != 0) {
+                RETRIES.inc();
+                sleep(backoff(attempt), failure);
+            }
+            long remaining = getRemainingNanos();
+            if (remaining <= 0) {
+                REJECTED.inc();
+                throw withCause(new IOException("Cycle budget exhausted before requesting " + request.url()), failure);
+            }
+            HostLimiter limiter = limiters.computeIfAbsent(host, e -> newLimiter());
+            try {
+                if (!limiter.acquire(remaining)) {
+                    REJECTED.inc();
+                    throw withCause(new IOException("Cycle budget exhausted waiting to request " + request.url()), failure);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw withCause(new InterruptedIOException("Interrupted waiting to request " + request.url()), failure);
+            }
+            // Waiting for a turn may have used up the rest of the budget.
+            remaining = getRemainingNanos();
+            if (remaining <= 0) {
+                limiter.release();
+                REJECTED.inc();
+                throw withCause(new IOException("Cycle budget exhausted before requesting " + request.url()), failure);
+            }
+            if (!breaker.tryAcquire()) {
+                limiter.release();
+                REJECTED.inc();
+                throw withCause(new IOException("Circuit breaker open for " + host), failure);
+            }
+
+            Call call = client.get().newCall(request);
+            long timeout = Math.min(remaining, TimeUnit.SECONDS.toNanos(Math.max(1, config.requestTimeoutSeconds)));
+            call.timeout().timeout(timeout, TimeUnit.NANOSECONDS);
+            activeCalls.add(call);
+            IOException error;
+            boolean retryable = true;
+            try (Response response = call.execute()) {
+                int code = response.code();
+                if (code == 429 || code >= 500) {
+                    error = new IOException("Failed to fetch " + request.url() + ". Got: " + code);
+                } else if (!response.isSuccessful() && code != 304) {
+                    // The host is fine, the page just isn't there.
+                    breaker.recordSuccess();
+                    retryable = false;
+                    error = new IOException("Failed to fetch " + request.url() + ". Got: " + code);
+                } else {
+                    T result = handler.handle(response);
+                    breaker.recordSuccess();
+                    return result;
+                }
+            } catch (IOException ex) {
+                error = ex;
+            } catch (RuntimeException | Error ex) {
+                // Not retried, but a probe must still settle the breaker or the host stays blocked.
+                breaker.recordFailure();
+                throw ex;
+            } finally {
+                activeCalls.remove(call);
+                limiter.release();
+            }
+            if (!retryable) throw error;
+
+            breaker.recordFailure();
+            failure = error;
+            // Cancelled by the cycle ending, don't bother retrying.
+            if (call.isCanceled()) break;
+        }
+        LOGGER.debug("Giving up on {}.", request.url());
+        throw failure != null ? failure : new IOException("Failed to fetch " + request.url());
+    }
+
+    /**
+     * @param host The host.
+     * @return If requests to the host are currently being failed fast.
+     */
+    public boolean isOpen(String host) {
+        CircuitBreaker breaker = breakers.get(host);
+        return breaker != null && breaker.isOpen();
+    }
+
+    private void cancelCalls() {
+        for (Call call : activeCalls) {
+            call.cancel();
+        }
+    }
+
+    private CircuitBreaker newBreaker(String host) {
+        CircuitBreaker breaker = new CircuitBreaker(
+                config.breakerThreshold,
+                TimeUnit.SECONDS.toNanos(Math.max(1, config.breakerOpenSeconds)),
+                TimeUnit.MINUTES.toNanos(30)
+        );
+        Metrics.gauge("projectbot_circuit_open", "If requests to an upstream host are being failed fast.", () -> breaker.isOpen() ? 1 : 0, "host", host);
+        return breaker;
+    }
+
+    private HostLimiter newLimiter() {
+        return new HostLimiter(config.maxRequestsPerHost, TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.hostIntervalMillis)));
+    }
+
+    // Waits before a retry, never past the end of the cycle budget.
+    private void sleep(long millis, IOException failure) throws IOException {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(getRemainingNanos());
+        if (remaining <= millis) throw failure;
+
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw withCause(new InterruptedIOException("Interrupted waiting to retry."), failure);
+        }
+    }
+
+    private static long backoff(int attempt) {
+        long backoff = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt - 1, 20));
+        // Full jitter between half and the whole backoff.
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    private static IOException withCause(IOException ex, @Nullable IOException cause) {
+        if (cause != null) {
+            ex.addSuppressed(cause);
+        }
+        return ex;
+    }
+
+    /**
+     * Consumes a response.
+     */
+    public interface ResponseHandler<T> {
+
+        @Nullable
+        T handle(Response response) throws IOException;
+    }
+}
@@ -0,0 +1,207 @@
+package net.covers1624.projectbot.live;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import net.covers1624.projectbot.checker.ChangeBatch;
+import net.covers1624.projectbot.metrics.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes each {@link ChangeBatch} to connected clients as Server-Sent Events.
+ * <p>
+ * Each batch is sent as a {@code changes} event, its data the same json as the outbox,
+ * its id the time of the update cycle. Clients reconnecting with {@code Last-Event-ID}
+ * are sent the recent batches they missed. A comment is sent periodically to keep idle
+ * connections open and find dead ones.
+ * <p>
+ * The request threads only hand connections over, so connected clients don't hold onto server
+ * threads. Each client has its own bounded queue of events, written in the background. A client
+ * which falls more than {@link #MAX_QUEUED} events behind, most likely having stopped reading
+ * without closing the connection, is disconnected, it can't hold up delivery to anyone else.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class EventStream implements HttpHandler {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(ChangeBatch.class, new ChangeBatch.Adapter())
+            .create();
+
+    private static final long KEEP_ALIVE_SECONDS = 15;
+    // How many recent batches are kept for reconnecting clients.
+    private static final int REPLAY = 32;
+    // How many events a client may fall behind by before it's disconnected.
+    private static final int MAX_QUEUED = 64;
+
+    private static final byte[] CONNECTED = ": connected\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEEP_ALIVE = ": keep-alive\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                    .setNameFormat("Event Stream")
+                    .setDaemon(true)
+                    .build()
+    );
+    // Writes to clients, a client which stops reading blocks one of these threads, not the executor.
+    private final ExecutorService writers = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder()
+                    .setNameFormat("Event Stream Writer %d")
+                    .setDaemon(true)
+                    .build()
+    );
+
+    // Only touched on the executor.
+    private final List<Client> clients = new ArrayList<>();
+    private final ArrayDeque<Event> recent = new ArrayDeque<>();
+
+    private volatile int clientCount;
+
+    public EventStream() {
+        executor.scheduleWithFixedDelay(() -> broadcast(KEEP_ALIVE), KEEP_ALIVE_SECONDS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        Metrics.gauge("projectbot_event_stream_clients", "Clients connected to the change event stream.", () -> clientCount);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        long lastId = parseLastId(exchange.getRequestHeaders().getFirst("Last-Event-ID"));
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        Client client = new Client(exchange, exchange.getResponseBody());
+        executor.execute(() -> connect(client, lastId));
+    }
+
+    /**
+     * Push a batch to every connected client.
+     *
+     * @param batch The batch.
+     */
+    public void publish(ChangeBatch batch) {
+        Event event = new Event(batch.time(), format(batch.time(), GSON.toJson(batch)));
+        executor.execute(() -> {
+            recent.addLast(event);
+            while (recent.size() > REPLAY) {
+                recent.removeFirst();
+            }
+            broadcast(event.bytes);
+        });
+    }
+
+    private void connect(Client client, long lastId) {
+        if (!client.offer(CONNECTED)) return;
+
+        if (lastId != -1) {
+            for (Event event : recent) {
+                if (event.id > lastId && !client.offer(event.bytes)) return;
+            }
+        }
+        clients.add(client);
+        clientCount = clients.size();
+    }
+
+    private void broadcast(byte[] bytes) {
+        Iterator<Client> itr = clients.iterator();
+        while (itr.hasNext()) {
+            if (!itr.next().offer(bytes)) {
+                itr.remove();
+            }
+        }
+        clientCount = clients.size();
+    }
+
+    private static byte[] format(long id, String data) {
+        // Gson output is a single line, no need to split it across data fields.
+        return ("id: " + id + "\nevent: changes\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long parseLastId(@Nullable String header) {
+        if (header == null) return -1;
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private record Event(long id, byte[] bytes) { }
+
+    private class Client {
+
+        private final HttpExchange exchange;
+        private final OutputStream os;
+
+        // Guarded by this.
+        private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+        private boolean writing;
+        private boolean closed;
+
+        private Client(HttpExchange exchange, OutputStream os) {
+            this.exchange = exchange;
+            this.os = os;
+        }
+
+        // Queues the bytes to be written, false if the client is gone or has fallen too far behind.
+        private synchronized boolean offer(byte[] bytes) {
+            if (closed) return false;
+            if (queue.size() >= MAX_QUEUED) {
+                // Only possible while a write is stuck, the writer closes the connection if it ever returns.
+                LOGGER.debug("Event stream client {} fell behind, disconnecting.", exchange.getRemoteAddress());
+                closed = true;
+                queue.clear();
+                return false;
+            }
+            queue.addLast(bytes);
+            if (!writing) {
+                writing = true;
+                writers.execute(this::write);
+            }
+            return true;
+        }
+
+        // Writes until the queue is empty, closing the connection once the client is gone.
+        private void write() {
+            while (true) {
+                byte[] bytes;
+                synchronized (this) {
+                    if (closed) break;
+                    bytes = queue.pollFirst();
+                    if (bytes == null) {
+                        writing = false;
+                        return;
+                    }
+                }
+                try {
+                    os.write(bytes);
+                    os.flush();
+                } catch (IOException ex) {
+                    LOGGER.debug("Event stream client {} disconnected.", exchange.getRemoteAddress(), ex);
+                    synchronized (this) {
+                        closed = true;
+                        queue.clear();
+                    }
+                    break;
+                }
+            }
+            exchange.close();
+        }
+    }
+}
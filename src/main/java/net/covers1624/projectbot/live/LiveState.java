@@ -0,0 +1,48 @@
+package net.covers1624.projectbot.live;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the latest {@link StateSnapshot}.
+ * <p>
+ * The updater builds a new snapshot after each cycle and swaps it in, readers
+ * only ever see a complete snapshot and never wait on the updater. The json form
+ * is rendered once per snapshot, when published, and shared by every reader.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class LiveState {
+
+    private final AtomicReference<Published> current = new AtomicReference<>();
+
+    /**
+     * Replace the current snapshot.
+     *
+     * @param snapshot The new snapshot.
+     */
+    public void publish(StateSnapshot snapshot) {
+        current.set(new Published(snapshot, snapshot.toJson().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @return The current snapshot, or {@code null} if none has been published yet.
+     */
+    @Nullable
+    public StateSnapshot get() {
+        Published published = current.get();
+        return published != null ? published.snapshot : null;
+    }
+
+    /**
+     * @return The current snapshot and its json, or {@code null} if none has been published yet.
+     */
+    @Nullable
+    Published getPublished() {
+        return current.get();
+    }
+
+    record Published(StateSnapshot snapshot, byte[] json) { }
+}
@@ -0,0 +1,43 @@
+package net.covers1624.projectbot.live;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import net.covers1624.projectbot.http.LocalServer;
+
+import java.io.IOException;
+
+/**
+ * Serves the current {@link StateSnapshot} as json.
+ * <p>
+ * The snapshot's time is its {@code ETag}, so pollers can make conditional requests.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class StateHandler implements HttpHandler {
+
+    private static final String CONTENT_TYPE = "application/json; charset=utf-8";
+
+    private final LiveState state;
+
+    public StateHandler(LiveState state) {
+        this.state = state;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        LiveState.Published published = state.getPublished();
+        if (published == null) {
+            LocalServer.respond(exchange, 503, "text/plain", "No state yet.");
+            return;
+        }
+
+        String etag = "\"" + published.snapshot().time() + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        LocalServer.respond(exchange, 200, CONTENT_TYPE, published.json());
+    }
+}
@@ -0,0 +1,66 @@
+package net.covers1624.projectbot.live;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+
+/**
+ * An immutable view of everything the bot currently knows, as of the end of an update cycle.
+ * <p>
+ * The maps are the checkers' committed snapshots, which are replaced rather than modified,
+ * so they are shared as is.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ *
+ * @param time     The time of the update cycle, in epoch milliseconds.
+ * @param releases Each release on the Project listing, in listing order.
+ * @param watches  The entries on each extra watched page, in config order.
+ */
+public record StateSnapshot(long time, Map<String, Release> releases, Map<String, Map<String, String>> watches) {
+
+    /**
+     * @param desc The release description from the Project listing.
+     * @param jeps The JEP titles targeted to the release, keyed by id, in page order.
+     */
+    public record Release(String desc, Map<String, String> jeps) { }
+
+    /**
+     * @return The snapshot as json.
+     */
+    public String toJson() {
+        StringWriter sw = new StringWriter();
+        try (JsonWriter out = new JsonWriter(sw)) {
+            out.beginObject();
+            out.name("time").value(time);
+            out.name("releases").beginObject();
+            for (Map.Entry<String, Release> entry : releases.entrySet()) {
+                out.name(entry.getKey()).beginObject();
+                out.name("desc").value(entry.getValue().desc());
+                out.name("jeps");
+                writeEntries(out, entry.getValue().jeps());
+                out.endObject();
+            }
+            out.endObject();
+            out.name("watches").beginObject();
+            for (Map.Entry<String, Map<String, String>> entry : watches.entrySet()) {
+                out.name(entry.getKey());
+                writeEntries(out, entry.getValue());
+            }
+            out.endObject();
+            out.endObject();
+        } catch (IOException ex) {
+            throw new AssertionError("StringWriter threw.", ex);
+        }
+        return sw.toString();
+    }
+
+    private static void writeEntries(JsonWriter out, Map<String, String> entries) throws IOException {
+        out.beginObject();
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            out.name(entry.getKey()).value(entry.getValue());
+        }
+        out.endObject();
+    }
+}
@@ -0,0 +1,9 @@
+@FieldsAreNonnullByDefault
+@ParametersAreNonnullByDefault
+@MethodsReturnNonnullByDefault
+package net.covers1624.projectbot.live;
+
+import net.covers1624.quack.annotation.FieldsAreNonnullByDefault;
+import net.covers1624.quack.annotation.MethodsReturnNonnullByDefault;
+
+import javax.annotation.ParametersAreNonnullByDefault;
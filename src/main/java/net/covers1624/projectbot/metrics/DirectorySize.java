@@ -0,0 +1,66 @@
+package net.covers1624.projectbot.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.stream.Stream;
+
+/**
+ * A gauge of the total size of a directory tree.
+ * <p>
+ * Walking the tree isn't free, so the size is cached for a minute between scrapes.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class DirectorySize implements DoubleSupplier {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final long CACHE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Path dir;
+
+    private long size;
+    private long lastWalk;
+    private boolean walked;
+
+    public DirectorySize(Path dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public synchronized double getAsDouble() {
+        long now = System.nanoTime();
+        if (!walked || now - lastWalk > CACHE_NANOS) {
+            size = walk();
+            lastWalk = now;
+            walked = true;
+        }
+        return size;
+    }
+
+    private long walk() {
+        if (Files.notExists(dir)) return 0;
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile)
+                    .mapToLong(e -> {
+                        try {
+                            return Files.size(e);
+                        } catch (IOException ex) {
+                            // Deleted while walking.
+                            return 0;
+                        }
+                    })
+                    .sum();
+        } catch (IOException | UncheckedIOException ex) {
+            LOGGER.warn("Failed to compute size of {}.", dir, ex);
+            return size;
+        }
+    }
+}
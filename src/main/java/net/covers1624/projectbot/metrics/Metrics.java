@@ -0,0 +1,154 @@
+package net.covers1624.projectbot.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The global metric registry.
+ * <p>
+ * Metrics are looked up once and held onto by whatever records them, recording
+ * is lock free and doesn't allocate. Each metric is identified by its name and
+ * labels, asking for the same metric twice returns the same instance.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public final class Metrics {
+
+    private static final Map<String, Family> FAMILIES = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Get or create a counter.
+     *
+     * @param name   The metric name.
+     * @param help   The metric description.
+     * @param labels Label name and value pairs.
+     * @return The counter.
+     */
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, Type.COUNTER).metrics.computeIfAbsent(formatLabels(labels), e -> new Counter());
+    }
+
+    /**
+     * Get or create a timer.
+     *
+     * @param name   The metric name, usually ending in {@code _seconds}.
+     * @param help   The metric description.
+     * @param labels Label name and value pairs.
+     * @return The timer.
+     */
+    public static Timer timer(String name, String help, String... labels) {
+        return (Timer) family(name, help, Type.SUMMARY).metrics.computeIfAbsent(formatLabels(labels), e -> new Timer());
+    }
+
+    /**
+     * Register a gauge, replacing any existing gauge with the same name and labels.
+     *
+     * @param name     The metric name.
+     * @param help     The metric description.
+     * @param supplier Supplies the value of the gauge when scraped.
+     * @param labels   Label name and value pairs.
+     */
+    public static void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        family(name, help, Type.GAUGE).metrics.put(formatLabels(labels), supplier);
+    }
+
+    /**
+     * Remove every metric with the given label, for example when a release is no longer tracked.
+     *
+     * @param label The label name.
+     * @param value The label value.
+     */
+    public static void removeLabel(String label, String value) {
+        String needle = label + "=\"" + escape(value) + "\"";
+        for (Family family : FAMILIES.values()) {
+            family.metrics.keySet().removeIf(e -> e.contains(needle));
+        }
+    }
+
+    /**
+     * Write all metrics in the Prometheus text exposition format.
+     *
+     * @param out The writer.
+     */
+    public static void write(Writer out) throws IOException {
+        for (Family family : FAMILIES.values()) {
+            if (family.metrics.isEmpty()) continue;
+
+            out.write("# HELP " + family.name + " " + family.help + "\n");
+            out.write("# TYPE " + family.name + " " + family.type.name + "\n");
+            for (Map.Entry<String, Object> entry : family.metrics.entrySet()) {
+                String labels = entry.getKey();
+                Object metric = entry.getValue();
+                if (metric instanceof Counter counter) {
+                    writeSample(out, family.name, labels, counter.get());
+                } else if (metric instanceof Timer timer) {
+                    writeSample(out, family.name + "_count", labels, timer.getCount());
+                    writeSample(out, family.name + "_sum", labels, timer.getTotalSeconds());
+                } else if (metric instanceof DoubleSupplier gauge) {
+                    writeSample(out, family.name, labels, gauge.getAsDouble());
+                }
+            }
+        }
+    }
+
+    private static void writeSample(Writer out, String name, String labels, double value) throws IOException {
+        out.write(name);
+        out.write(labels);
+        out.write(' ');
+        if (value == (long) value) {
+            out.write(Long.toString((long) value));
+        } else {
+            out.write(Double.toString(value));
+        }
+        out.write('\n');
+    }
+
+    private static Family family(String name, String help, Type type) {
+        Family family = FAMILIES.computeIfAbsent(name, e -> new Family(name, help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " already registered as a " + family.type.name);
+        }
+        return family;
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length == 0) return "";
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("Labels must be name and value pairs.");
+
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i != 0) sb.append(',');
+            sb.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private enum Type {
+        COUNTER("counter"),
+        GAUGE("gauge"),
+        SUMMARY("summary");
+
+        private final String name;
+
+        Type(String name) {
+            this.name = name;
+        }
+    }
+
+    private record Family(String name, String help, Type type, Map<String, Object> metrics) {
+
+        private Family(String name, String help, Type type) {
+            this(name, help, type, new ConcurrentSkipListMap<>());
+        }
+    }
+}
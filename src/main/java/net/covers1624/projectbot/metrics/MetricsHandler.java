@@ -0,0 +1,30 @@
+package net.covers1624.projectbot.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import net.covers1624.projectbot.http.LocalServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves all {@link Metrics} in the Prometheus text exposition format.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class MetricsHandler implements HttpHandler {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(4096);
+        try (Writer writer = new OutputStreamWriter(bos, StandardCharsets.UTF_8)) {
+            Metrics.write(writer);
+        }
+        LocalServer.respond(exchange, 200, CONTENT_TYPE, bos.toByteArray());
+    }
+}
@@ -0,0 +1,30 @@
+package net.covers1624.projectbot.metrics;
+
+/**
+ * The timers for each phase of checking a single page.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ *
+ * @param fetch  Requesting and reading the page.
+ * @param parse  Extracting entries from the page.
+ * @param diff   Diffing against the previous snapshot.
+ * @param commit Writing the new snapshot.
+ */
+public record PhaseTimers(Timer fetch, Timer parse, Timer diff, Timer commit) {
+
+    private static final String NAME = "projectbot_page_phase_seconds";
+    private static final String HELP = "Time spent in each phase of checking a page.";
+
+    /**
+     * @param page The page, either a release or {@code list} for the Project listing.
+     * @return The timers for the page.
+     */
+    public static PhaseTimers forPage(String page) {
+        return new PhaseTimers(
+                Metrics.timer(NAME, HELP, "page", page, "phase", "fetch"),
+                Metrics.timer(NAME, HELP, "page", page, "phase", "parse"),
+                Metrics.timer(NAME, HELP, "page", page, "phase", "diff"),
+                Metrics.timer(NAME, HELP, "page", page, "phase", "commit")
+        );
+    }
+}
@@ -0,0 +1,47 @@
+package net.covers1624.projectbot.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the count and total duration of some operation.
+ * <p>
+ * Exposed as a Prometheus summary, {@code _count} and {@code _sum} in seconds.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public final class Timer {
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    Timer() {
+    }
+
+    /**
+     * Record a single operation which started at the given time.
+     *
+     * @param startNanos The start of the operation, from {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Record a single operation.
+     *
+     * @param nanos The duration of the operation, in nanoseconds.
+     */
+    public void record(long nanos) {
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getTotalSeconds() {
+        return totalNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,282 @@
+package net.covers1624.projectbot.notify;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import net.covers1624.projectbot.Config;
+import net.covers1624.projectbot.checker.ChangeBatch;
+import net.covers1624.projectbot.checker.JepTracker.JEPMove;
+import net.covers1624.projectbot.checker.ProjectChecker.JEPChange;
+import net.covers1624.projectbot.checker.ProjectListChecker.ProjectListChange;
+import net.covers1624.projectbot.util.FileUtils;
+import net.covers1624.projectbot.watch.EntryChange;
+import net.covers1624.projectbot.watch.PageChange;
+import net.covers1624.quack.gson.JsonUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static net.covers1624.projectbot.OpenJdkProjectBot.DUKE_ICON;
+
+/**
+ * Publishes detected changes as static Atom ({@code atom.xml}) and JSON Feed ({@code feed.json}) files.
+ * <p>
+ * Each {@link ChangeBatch} becomes one feed entry. Entries are rendered once, when appended,
+ * and the rendered fragments are kept in {@code entries.json}. Appending a batch only renders
+ * the new entry, drops entries past the configured window, and stitches the cached fragments
+ * together. Every file is replaced atomically, readers never see a partial feed.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class ChangeFeed {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new Gson();
+
+    private static final String TITLE = "JDK Updates";
+
+    private final Path entriesFile;
+    private final Path atomFile;
+    private final Path jsonFile;
+    private final Config.Feed config;
+    private final String jdkListUrl;
+    private final String jepsUrl;
+
+    private final Entries entries;
+
+    /**
+     * @param dir        The directory to write the feeds to.
+     * @param config     The feed config.
+     * @param jdkListUrl The Project listing url, release pages are relative to it.
+     * @param jepsUrl    The JEP index url, JEP pages are relative to it.
+     */
+    public ChangeFeed(Path dir, Config.Feed config, String jdkListUrl, String jepsUrl) {
+        entriesFile = dir.resolve("entries.json");
+        atomFile = dir.resolve("atom.xml");
+        jsonFile = dir.resolve("feed.json");
+        this.config = config;
+        this.jdkListUrl = jdkListUrl;
+        this.jepsUrl = jepsUrl;
+        entries = loadEntries(entriesFile);
+    }
+
+    /**
+     * Add a batch of changes to the feed.
+     *
+     * @param batch The changes.
+     */
+    public synchronized void append(ChangeBatch batch) throws IOException {
+        if (batch.isEmpty()) return;
+
+        String id = "urn:projectbot:changes:" + batch.time();
+        String title = title(batch);
+        String html = renderHtml(batch);
+        String updated = Instant.ofEpochMilli(batch.time()).toString();
+
+        Entry entry = new Entry();
+        entry.time = batch.time();
+        entry.atom = "<entry>"
+                + "<id>" + id + "</id>"
+                + "<title>" + escape(title) + "</title>"
+                + "<updated>" + updated + "</updated>"
+                + "<link rel=\"alternate\" href=\"" + escape(jdkListUrl) + "\"/>"
+                + "<content type=\"html\">" + escape(html) + "</content>"
+                + "</entry>\n";
+        JsonObject item = new JsonObject();
+        item.addProperty("id", id);
+        item.addProperty("url", jdkListUrl);
+        item.addProperty("title", title);
+        item.addProperty("content_html", html);
+        item.addProperty("date_published", updated);
+        entry.json = GSON.toJson(item);
+
+        // Newest first.
+        entries.entries.add(0, entry);
+        int max = Math.max(1, config.maxEntries);
+        if (entries.entries.size() > max) {
+            entries.entries.subList(max, entries.entries.size()).clear();
+        }
+
+        // Cache first, if writing the feeds fails they are caught up by the next append.
+        FileUtils.writeJsonAtomic(GSON, entriesFile, entries);
+        FileUtils.writeAtomic(atomFile, buildAtom().getBytes(StandardCharsets.UTF_8));
+        FileUtils.writeAtomic(jsonFile, buildJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String buildAtom() {
+        StringBuilder sb = new StringBuilder(1024 * entries.entries.size());
+        sb.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+        sb.append("<feed xmlns=\"http://www.w3.org/2005/Atom\">\n");
+        sb.append("<id>urn:projectbot:changes</id>\n");
+        sb.append("<title>").append(TITLE).append("</title>\n");
+        sb.append("<updated>").append(Instant.ofEpochMilli(entries.entries.get(0).time)).append("</updated>\n");
+        sb.append("<author><name>OpenJDK Project Bot</name></author>\n");
+        sb.append("<icon>").append(escape(DUKE_ICON)).append("</icon>\n");
+        sb.append("<link rel=\"alternate\" href=\"").append(escape(jdkListUrl)).append("\"/>\n");
+        if (config.baseUrl != null) {
+            sb.append("<link rel=\"self\" href=\"").append(escape(config.baseUrl)).append("atom.xml\"/>\n");
+        }
+        for (Entry entry : entries.entries) {
+            sb.append(entry.atom);
+        }
+        sb.append("</feed>\n");
+        return sb.toString();
+    }
+
+    private String buildJson() {
+        JsonObject feed = new JsonObject();
+        feed.addProperty("version", "https://jsonfeed.org/version/1.1");
+        feed.addProperty("title", TITLE);
+        feed.addProperty("home_page_url", jdkListUrl);
+        if (config.baseUrl != null) {
+            feed.addProperty("feed_url", config.baseUrl + "feed.json");
+        }
+        feed.addProperty("icon", DUKE_ICON);
+        String header = GSON.toJson(feed);
+
+        // Splice the cached items in, rather than parsing them back.
+        StringBuilder sb = new StringBuilder(header.length() + 1024 * entries.entries.size());
+        sb.append(header, 0, header.length() - 1);
+        sb.append(",\"items\":[");
+        for (int i = 0; i < entries.entries.size(); i++) {
+            if (i != 0) sb.append(',');
+            sb.append(entries.entries.get(i).json);
+        }
+        sb.append("]}\n");
+        return sb.toString();
+    }
+
+    private static String title(ChangeBatch batch) {
+        List<String> parts = new ArrayList<>(3);
+        int jepChanges = 0;
+        for (List<JEPChange> changes : batch.jepChanges().values()) {
+            jepChanges += changes.size();
+        }
+        if (!batch.listChanges().isEmpty()) parts.add(plural(batch.listChanges().size(), "release change"));
+        if (!batch.jepMoves().isEmpty()) parts.add(plural(batch.jepMoves().size(), "JEP move"));
+        if (jepChanges != 0) parts.add(plural(jepChanges, "JEP change"));
+        for (PageChange page : batch.pageChanges()) {
+            parts.add(plural(page.changes().size(), page.page() + " change"));
+        }
+        if (batch.jepChanges().size() == 1 && parts.size() == 1) {
+            return "JDK " + batch.jepChanges().keySet().iterator().next() + ": " + parts.get(0);
+        }
+        return String.join(", ", parts);
+    }
+
+    private static String plural(int count, String noun) {
+        return count + " " + noun + (count == 1 ? "" : "s");
+    }
+
+    private String renderHtml(ChangeBatch batch) {
+        StringBuilder sb = new StringBuilder();
+        if (!batch.listChanges().isEmpty()) {
+            sb.append("<h3>JDK Project Listing</h3><ul>");
+            for (ProjectListChange change : batch.listChanges()) {
+                sb.append("<li>Release ").append(releaseLink(change.version())).append(' ');
+                sb.append(status(change.from())).append(" &rarr; ").append(status(change.to())).append("</li>");
+            }
+            sb.append("</ul>");
+        }
+        if (!batch.jepMoves().isEmpty()) {
+            sb.append("<h3>JEPs Moved Between Releases</h3><ul>");
+            for (JEPMove move : batch.jepMoves()) {
+                sb.append("<li>").append(jepLink(move.id(), move.desc())).append(": ");
+                sb.append(releaseLink(move.from())).append(" &rarr; ").append(releaseLink(move.to())).append("</li>");
+            }
+            sb.append("</ul>");
+        }
+        for (Map.Entry<String, List<JEPChange>> entry : batch.jepChanges().entrySet()) {
+            sb.append("<h3>JEP Changes for Release ").append(releaseLink(entry.getKey())).append("</h3><ul>");
+            for (JEPChange change : entry.getValue()) {
+                sb.append("<li>").append(change.addition() ? "Added: " : "Removed: ").append(jepLink(change.id(), change.desc())).append("</li>");
+            }
+            sb.append("</ul>");
+        }
+        for (PageChange page : batch.pageChanges()) {
+            sb.append("<h3>Changes to <a href=\"").append(escape(page.url())).append("\">").append(escape(page.page())).append("</a></h3><ul>");
+            for (EntryChange change : page.changes()) {
+                sb.append("<li>").append(escape(change.key())).append(' ');
+                sb.append(status(change.from())).append(" &rarr; ").append(status(change.to())).append("</li>");
+            }
+            sb.append("</ul>");
+        }
+        return sb.toString();
+    }
+
+    private String releaseLink(String version) {
+        return "<a href=\"" + escape(jdkListUrl + version) + "\">" + escape(version) + "</a>";
+    }
+
+    private String jepLink(String id, String desc) {
+        return "<a href=\"" + escape(jepsUrl + id) + "\">" + escape(id) + "</a> - " + escape(desc);
+    }
+
+    private static String status(@Nullable String status) {
+        return status == null ? "(none)" : "<code>" + escape(status) + "</code>";
+    }
+
+    // Escapes for both XML and HTML text and attributes.
+    private static String escape(String str) {
+        StringBuilder sb = null;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            String rep = switch (c) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                case '\'' -> "&#39;";
+                default -> null;
+            };
+            if (rep == null) {
+                if (sb != null) sb.append(c);
+                continue;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(str.length() + 16).append(str, 0, i);
+            }
+            sb.append(rep);
+        }
+        return sb != null ? sb.toString() : str;
+    }
+
+    private static Entries loadEntries(Path entriesFile) {
+        if (Files.exists(entriesFile)) {
+            try {
+                Entries entries = JsonUtils.parse(GSON, entriesFile, Entries.class);
+                if (entries != null) {
+                    entries.entries.removeIf(e -> e == null || e.atom == null || e.json == null);
+                    return entries;
+                }
+            } catch (IOException | JsonParseException ex) {
+                LOGGER.warn("Failed to read feed entries {}. Starting fresh.", entriesFile, ex);
+            }
+        }
+        return new Entries();
+    }
+
+    private static class Entries {
+
+        // Newest first.
+        public List<Entry> entries = new ArrayList<>();
+    }
+
+    private static class Entry {
+
+        public long time;
+        // The rendered <entry> element.
+        public String atom;
+        // The rendered JSON Feed item.
+        public String json;
+    }
+}
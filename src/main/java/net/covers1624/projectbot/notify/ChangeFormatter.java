@@ -0,0 +1,158 @@
+package net.covers1624.projectbot.notify;
+
+import net.covers1624.projectbot.checker.ChangeBatch;
+import net.covers1624.projectbot.checker.JepIndex.JepInfo;
+import net.covers1624.projectbot.checker.JepTracker.JEPMove;
+import net.covers1624.projectbot.checker.ProjectChecker.JEPChange;
+import net.covers1624.projectbot.checker.ProjectListChecker.ProjectListChange;
+import net.covers1624.projectbot.discord.DiscordWebhook;
+import net.covers1624.projectbot.discord.MessagePacker;
+import net.covers1624.projectbot.watch.EntryChange;
+import net.covers1624.projectbot.watch.PageChange;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static net.covers1624.projectbot.OpenJdkProjectBot.DUKE_ICON;
+
+/**
+ * Formats detected changes into webhook messages.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class ChangeFormatter {
+
+    private final String jdkListUrl;
+    private final String jepsUrl;
+
+    /**
+     * @param jdkListUrl The Project listing url, release pages are relative to it.
+     * @param jepsUrl    The JEP index url, JEP pages are relative to it.
+     */
+    public ChangeFormatter(String jdkListUrl, String jepsUrl) {
+        this.jdkListUrl = jdkListUrl;
+        this.jepsUrl = jepsUrl;
+    }
+
+    /**
+     * Pack the given batches into as few messages as possible, without JEP metadata.
+     *
+     * @param batches The batches, oldest first.
+     * @return The messages, in order.
+     */
+    public List<DiscordWebhook> format(List<ChangeBatch> batches) {
+        return format(batches, id -> null);
+    }
+
+    /**
+     * Pack the given batches into as few messages as possible.
+     *
+     * @param batches   The batches, oldest first.
+     * @param jepLookup Looks up metadata for a JEP, to add to its line. Must not block.
+     * @return The messages, in order.
+     */
+    public List<DiscordWebhook> format(List<ChangeBatch> batches, Function<String, @Nullable JepInfo> jepLookup) {
+        MessagePacker packer = new MessagePacker("JDK Updates", DUKE_ICON);
+        for (ChangeBatch batch : batches) {
+            addProjectListChanges(packer, batch.listChanges());
+            addMoves(packer, batch.jepMoves(), jepLookup);
+            for (Map.Entry<String, List<JEPChange>> entry : batch.jepChanges().entrySet()) {
+                addProjectChanges(packer, entry.getKey(), entry.getValue(), jepLookup);
+            }
+            for (PageChange page : batch.pageChanges()) {
+                addPageChanges(packer, page);
+            }
+        }
+        return packer.pack();
+    }
+
+    private void addProjectListChanges(MessagePacker packer, List<ProjectListChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (ProjectListChange change : changes) {
+            StringBuilder line = new StringBuilder();
+            line.append("- Release [").append(change.version()).append("](").append(jdkListUrl).append(change.version()).append(") ");
+            line.append(change.from() == null ? "(none)" : "`" + change.from() + "`");
+            line.append(" -> ");
+            line.append(change.to() == null ? "(none)" : "`" + change.to() + "`");
+            lines.add(line.toString());
+        }
+        packer.addSection("JDK Project Listing", jdkListUrl, "The following Project versions have changed:", lines);
+    }
+
+    private void addMoves(MessagePacker packer, List<JEPMove> moves, Function<String, @Nullable JepInfo> jepLookup) {
+        if (moves.isEmpty()) {
+            return;
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (JEPMove move : moves) {
+            StringBuilder line = new StringBuilder();
+            line.append("[").append(move.id()).append("](").append(jepsUrl).append(move.id()).append(") - ").append(move.desc());
+            line.append(": [").append(move.from()).append("](").append(jdkListUrl).append(move.from()).append(")");
+            line.append(" -> [").append(move.to()).append("](").append(jdkListUrl).append(move.to()).append(")");
+            JepInfo info = jepLookup.apply(move.id());
+            if (info != null) {
+                appendInfo(line, info);
+            }
+            lines.add(line.toString());
+        }
+        packer.addSection("JEPs Moved Between Releases", jdkListUrl, "The following JEPs have been retargeted:", lines);
+    }
+
+    private void addProjectChanges(MessagePacker packer, String version, List<JEPChange> changes, Function<String, @Nullable JepInfo> jepLookup) {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (JEPChange change : changes) {
+            StringBuilder line = new StringBuilder();
+            if (change.addition()) {
+                line.append("Added: ");
+            } else {
+                line.append("Removed: ");
+            }
+            line.append("[").append(change.id()).append("](").append(jepsUrl).append(change.id()).append(") - ").append(change.desc());
+            JepInfo info = jepLookup.apply(change.id());
+            if (info != null) {
+                appendInfo(line, info);
+            }
+            lines.add(line.toString());
+        }
+        packer.addSection("JEP Changes for Release " + version, jdkListUrl + version, "The following JEPs have changed:", lines);
+    }
+
+    private static void addPageChanges(MessagePacker packer, PageChange page) {
+        if (page.changes().isEmpty()) {
+            return;
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (EntryChange change : page.changes()) {
+            StringBuilder line = new StringBuilder();
+            line.append("- ").append(change.key()).append(' ');
+            line.append(change.from() == null ? "(none)" : "`" + change.from() + "`");
+            line.append(" -> ");
+            line.append(change.to() == null ? "(none)" : "`" + change.to() + "`");
+            lines.add(line.toString());
+        }
+        packer.addSection("Changes to " + page.page(), page.url(), "The following entries have changed:", lines);
+    }
+
+    private static void appendInfo(StringBuilder line, JepInfo info) {
+        List<String> parts = new ArrayList<>(3);
+        if (info.status != null) parts.add(info.status);
+        if (info.type != null) parts.add(info.type);
+        if (info.component != null) parts.add(info.component);
+        if (parts.isEmpty()) return;
+
+        line.append(" _(").append(String.join(", ", parts)).append(")_");
+    }
+}
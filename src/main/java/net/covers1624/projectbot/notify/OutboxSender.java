@@ -0,0 +1,229 @@
+package net.covers1624.projectbot.notify;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.covers1624.projectbot.checker.ChangeBatch;
+import net.covers1624.projectbot.checker.JepIndex;
+import net.covers1624.projectbot.discord.DiscordWebhook;
+import net.covers1624.projectbot.discord.WebhookDispatcher;
+import net.covers1624.projectbot.discord.WebhookDispatcher.RejectedException;
+import net.covers1624.projectbot.discord.WebhookPayload;
+import net.covers1624.projectbot.metrics.Counter;
+import net.covers1624.projectbot.metrics.Metrics;
+import net.covers1624.projectbot.store.Outbox;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Drains the {@link Outbox} in the background.
+ * <p>
+ * Targets waiting on the same entries are grouped, and each entry is routed to the
+ * targets subscribed to its changes. Targets which end up with the same changes share
+ * messages, so each distinct set of changes is formatted and encoded once. A target's cursor is only advanced once every message
+ * has been delivered to it, anything else is retried on the next drain. Delivery is
+ * at least once, a target may see a message again if a later one in the same drain failed.
+ * Messages a target permanently rejects are dead lettered, recorded by the {@link Outbox}
+ * and skipped, so they can't hold the target back forever. A target which has failed for
+ * longer than {@link #MAX_FAILING_HOURS} is skipped ahead the same way, so a broken webhook
+ * can't stop the outbox from being compacted for every other target.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class OutboxSender {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int MAX_ENTRIES = 50;
+    private static final long RETRY_INTERVAL_MINS = 1;
+    private static final long MAX_FAILING_HOURS = 24;
+
+    private static final Counter DEAD_LETTERS = Metrics.counter("projectbot_webhook_dead_letters_total", "Webhook messages skipped, permanently rejected or failing for too long.");
+
+    private final Outbox outbox;
+    private final WebhookDispatcher dispatcher;
+    private final JepIndex jepIndex;
+    private final RoutingIndex routing;
+    private final ChangeFormatter formatter;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                    .setNameFormat("Outbox Sender")
+                    .setDaemon(true)
+                    .build()
+    );
+
+    // Only touched from the executor.
+    private final Set<String> inFlight = new HashSet<>();
+
+    public OutboxSender(Outbox outbox, WebhookDispatcher dispatcher, JepIndex jepIndex, RoutingIndex routing, ChangeFormatter formatter) {
+        this.outbox = outbox;
+        this.dispatcher = dispatcher;
+        this.jepIndex = jepIndex;
+        this.routing = routing;
+        this.formatter = formatter;
+    }
+
+    /**
+     * Start draining, picking up anything left in the outbox from a previous run.
+     */
+    public void start() {
+        executor.scheduleWithFixedDelay(this::drain, 0, RETRY_INTERVAL_MINS, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Drain as soon as possible, usually because something was just appended.
+     */
+    public void wake() {
+        executor.execute(this::drain);
+    }
+
+    /**
+     * Drain until nothing more can be delivered right now.
+     * <p>
+     * Returns once everything is delivered, deliveries have been given up on, or the timeout passes.
+     *
+     * @param timeout The longest to wait.
+     * @param unit    The unit of the timeout.
+     * @return If every entry was delivered.
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        if (outbox.size() == 0) return true;
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        wake();
+        while (System.nanoTime() - deadline < 0) {
+            // Completed sends re-drain in the same task, so once the executor sees nothing in flight, there is nothing left to do.
+            Future<Boolean> idle = executor.submit(() -> {
+                if (!inFlight.isEmpty()) return false;
+
+                // Drop whatever was just delivered, so the size below is accurate.
+                outbox.compact(routing.getTargets());
+                return true;
+            });
+            try {
+                if (idle.get()) break;
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("Failed to check for in flight deliveries.", ex.getCause());
+            }
+            Thread.sleep(50);
+        }
+        return outbox.size() == 0;
+    }
+
+    private void drain() {
+        boolean again = false;
+        try {
+            outbox.compact(routing.getTargets());
+
+            // Group idle targets by their cursor, so targets in sync share the same messages.
+            Map<Long, List<String>> groups = new TreeMap<>();
+            for (String target : routing.getTargets()) {
+                if (inFlight.contains(target)) continue;
+                groups.computeIfAbsent(outbox.getCursor(target), e -> new ArrayList<>()).add(target);
+            }
+
+            for (Map.Entry<Long, List<String>> group : groups.entrySet()) {
+                List<Outbox.Entry> entries = outbox.getPending(group.getKey(), MAX_ENTRIES);
+                if (entries.isEmpty()) continue;
+
+                long lastSeq = entries.get(entries.size() - 1).seq();
+                Map<String, List<ChangeBatch>> routed = new HashMap<>();
+                for (Outbox.Entry entry : entries) {
+                    routing.route(entry.batch()).forEach((target, batch) -> routed.computeIfAbsent(target, e -> new ArrayList<>()).add(batch));
+                }
+
+                // Targets subscribed to the same changes share the same messages.
+                Map<List<ChangeBatch>, List<String>> views = new LinkedHashMap<>();
+                for (String target : group.getValue()) {
+                    views.computeIfAbsent(routed.getOrDefault(target, List.of()), e -> new ArrayList<>()).add(target);
+                }
+                for (Map.Entry<List<ChangeBatch>, List<String>> view : views.entrySet()) {
+                    if (view.getKey().isEmpty()) {
+                        // Nothing these targets are subscribed to, skip straight past it.
+                        for (String target : view.getValue()) {
+                            outbox.markDelivered(target, lastSeq);
+                        }
+                        // There may be more waiting.
+                        again |= entries.size() == MAX_ENTRIES;
+                        continue;
+                    }
+                    List<WebhookPayload> payloads = new ArrayList<>();
+                    for (DiscordWebhook message : formatter.format(view.getKey(), jepIndex::get)) {
+                        payloads.add(message.encode());
+                    }
+                    for (String target : view.getValue()) {
+                        send(target, payloads, lastSeq);
+                    }
+                }
+            }
+        } catch (Throwable ex) {
+            LOGGER.error("Error draining outbox.", ex);
+            return;
+        }
+        if (again) {
+            drain();
+        }
+    }
+
+    private void send(String target, List<WebhookPayload> payloads, long lastSeq) {
+        inFlight.add(target);
+        // The dispatcher delivers each target's messages in order.
+        CompletableFuture<?>[] futures = new CompletableFuture[payloads.size()];
+        for (int i = 0; i < payloads.size(); i++) {
+            futures[i] = dispatcher.send(target, payloads.get(i));
+        }
+        CompletableFuture.allOf(futures).whenCompleteAsync((v, ex) -> {
+            inFlight.remove(target);
+            Map<WebhookPayload, RejectedException> rejected = new LinkedHashMap<>();
+            for (int i = 0; i < futures.length; i++) {
+                Throwable failure = futures[i].handle((r, e) -> e).join();
+                if (failure instanceof CompletionException) {
+                    failure = failure.getCause();
+                }
+                if (failure == null) continue;
+                if (!(failure instanceof RejectedException rejection)) {
+                    LOGGER.error("Failed to deliver webhook, will retry.", failure);
+                    skipIfStuck(target, payloads, lastSeq);
+                    return;
+                }
+                rejected.put(payloads.get(i), rejection);
+            }
+            try {
+                for (Map.Entry<WebhookPayload, RejectedException> entry : rejected.entrySet()) {
+                    deadLetter(entry.getKey(), lastSeq, entry.getValue().getMessage());
+                }
+                outbox.markDelivered(target, lastSeq);
+            } catch (IOException ex2) {
+                LOGGER.error("Failed to record webhook delivery.", ex2);
+                return;
+            }
+            // There may be more waiting.
+            drain();
+        }, executor);
+    }
+
+    // Skips the target past the given messages if it has been failing for too long.
+    private void skipIfStuck(String target, List<WebhookPayload> payloads, long lastSeq) {
+        long now = System.currentTimeMillis();
+        try {
+            long since = outbox.recordFailure(target, now);
+            if (now - since < TimeUnit.HOURS.toMillis(MAX_FAILING_HOURS)) return;
+
+            LOGGER.warn("Webhook has been failing for over {} hours, skipping {} messages.", MAX_FAILING_HOURS, payloads.size());
+            for (WebhookPayload payload : payloads) {
+                deadLetter(payload, lastSeq, "Failing for over " + MAX_FAILING_HOURS + " hours.");
+            }
+            outbox.markDelivered(target, lastSeq);
+        } catch (IOException ex) {
+            LOGGER.error("Failed to record webhook failure.", ex);
+        }
+    }
+
+    private void deadLetter(WebhookPayload payload, long seq, String reason) throws IOException {
+        DEAD_LETTERS.inc();
+        LOGGER.error("Skipping webhook message. {}\n{}", reason, payload.toJson());
+        outbox.recordDeadLetter(seq, reason, payload.toJson());
+    }
+}
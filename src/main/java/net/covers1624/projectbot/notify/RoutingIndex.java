@@ -0,0 +1,203 @@
+package net.covers1624.projectbot.notify;
+
+import net.covers1624.projectbot.Config;
+import net.covers1624.projectbot.checker.ChangeBatch;
+import net.covers1624.projectbot.checker.JepTracker.JEPMove;
+import net.covers1624.projectbot.checker.ProjectChecker.JEPChange;
+import net.covers1624.projectbot.checker.ProjectListChecker.ProjectListChange;
+import net.covers1624.projectbot.watch.EntryChange;
+import net.covers1624.projectbot.watch.PageChange;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Decides which webhooks each change is sent to.
+ * <p>
+ * Subscriptions are compiled once. Filters are bucketed by release, so a change only
+ * looks at the filters for its own release plus those for every release. Subscriptions
+ * with identical filters share a single filter, which is evaluated once per change
+ * no matter how many webhooks use it.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class RoutingIndex {
+
+    private final Set<String> targets;
+    private final Map<String, List<Filter>> byRelease;
+    private final List<Filter> anyRelease;
+
+    private RoutingIndex(Set<String> targets, Map<String, List<Filter>> byRelease, List<Filter> anyRelease) {
+        this.targets = targets;
+        this.byRelease = byRelease;
+        this.anyRelease = anyRelease;
+    }
+
+    /**
+     * Compile the given subscriptions.
+     *
+     * @param webhooks      Webhooks sent every change.
+     * @param subscriptions Filtered subscriptions.
+     * @return The index.
+     * @throws IllegalArgumentException If a subscription is invalid.
+     */
+    public static RoutingIndex compile(List<String> webhooks, List<Config.Subscription> subscriptions) {
+        Set<String> targets = new LinkedHashSet<>();
+        Map<String, Pattern> patterns = new HashMap<>();
+        Map<String, Map<FilterKey, Filter>> byRelease = new HashMap<>();
+        Map<FilterKey, Filter> anyRelease = new LinkedHashMap<>();
+
+        FilterKey everything = new FilterKey(true, true, false, null);
+        for (String webhook : webhooks) {
+            targets.add(webhook);
+            anyRelease.computeIfAbsent(everything, e -> new Filter(e, null)).targets.add(webhook);
+        }
+        for (Config.Subscription sub : subscriptions) {
+            if (sub.url == null) throw new IllegalArgumentException("Subscription is missing a url.");
+
+            targets.add(sub.url);
+            FilterKey key = new FilterKey(sub.listing, sub.watches, sub.additionsOnly, sub.jepPattern);
+            // Share compiled patterns between release buckets.
+            Pattern pattern = sub.jepPattern == null ? null : patterns.computeIfAbsent(sub.jepPattern, e -> compilePattern(sub.url, e));
+            if (sub.releases == null) {
+                anyRelease.computeIfAbsent(key, e -> new Filter(e, pattern)).targets.add(sub.url);
+                continue;
+            }
+            for (String release : sub.releases) {
+                byRelease.computeIfAbsent(release, e -> new LinkedHashMap<>())
+                        .computeIfAbsent(key, e -> new Filter(e, pattern)).targets.add(sub.url);
+            }
+        }
+
+        Map<String, List<Filter>> compiled = new HashMap<>();
+        byRelease.forEach((release, filters) -> compiled.put(release, List.copyOf(filters.values())));
+        return new RoutingIndex(Collections.unmodifiableSet(targets), compiled, List.copyOf(anyRelease.values()));
+    }
+
+    /**
+     * @return Every webhook, in config order.
+     */
+    public Set<String> getTargets() {
+        return targets;
+    }
+
+    /**
+     * Split a batch into what each webhook should be sent.
+     *
+     * @param batch The batch.
+     * @return The changes for each webhook, webhooks with nothing to be sent are omitted.
+     */
+    public Map<String, ChangeBatch> route(ChangeBatch batch) {
+        Map<String, Builder> builders = new HashMap<>();
+        Set<String> matched = new LinkedHashSet<>();
+        for (ProjectListChange change : batch.listChanges()) {
+            matched.clear();
+            match(matched, Kind.LISTING, change.version(), change.from() == null, null);
+            for (String target : matched) {
+                builders.computeIfAbsent(target, e -> new Builder()).listChanges.add(change);
+            }
+        }
+        for (Map.Entry<String, List<JEPChange>> entry : batch.jepChanges().entrySet()) {
+            String release = entry.getKey();
+            for (JEPChange change : entry.getValue()) {
+                matched.clear();
+                match(matched, Kind.JEP, release, change.addition(), change.id());
+                for (String target : matched) {
+                    builders.computeIfAbsent(target, e -> new Builder())
+                            .jepChanges.computeIfAbsent(release, e -> new ArrayList<>()).add(change);
+                }
+            }
+        }
+        for (JEPMove move : batch.jepMoves()) {
+            matched.clear();
+            // Removed from one release, added to the other.
+            match(matched, Kind.JEP, move.from(), false, move.id());
+            match(matched, Kind.JEP, move.to(), true, move.id());
+            for (String target : matched) {
+                builders.computeIfAbsent(target, e -> new Builder()).jepMoves.add(move);
+            }
+        }
+        for (PageChange page : batch.pageChanges()) {
+            Map<String, List<EntryChange>> byTarget = new LinkedHashMap<>();
+            for (EntryChange change : page.changes()) {
+                matched.clear();
+                match(matched, Kind.WATCH, page.page(), change.from() == null, null);
+                for (String target : matched) {
+                    byTarget.computeIfAbsent(target, e -> new ArrayList<>()).add(change);
+                }
+            }
+            byTarget.forEach((target, changes) -> builders.computeIfAbsent(target, e -> new Builder())
+                    .pageChanges.add(changes.size() == page.changes().size() ? page : new PageChange(page.page(), page.url(), changes)));
+        }
+
+        Map<String, ChangeBatch> routed = new HashMap<>();
+        builders.forEach((target, builder) -> routed.put(target, new ChangeBatch(batch.time(), builder.listChanges, builder.jepChanges, builder.jepMoves, builder.pageChanges)));
+        return routed;
+    }
+
+    // jepId is only set for JEP changes. For watches, release is the watch name.
+    private void match(Set<String> matched, Kind kind, String release, boolean addition, @Nullable String jepId) {
+        matchAll(matched, byRelease.getOrDefault(release, List.of()), kind, addition, jepId);
+        matchAll(matched, anyRelease, kind, addition, jepId);
+    }
+
+    private static void matchAll(Set<String> matched, List<Filter> filters, Kind kind, boolean addition, @Nullable String jepId) {
+        for (Filter filter : filters) {
+            // Everything this filter would add is already there.
+            if (matched.containsAll(filter.targets)) continue;
+
+            if (filter.matches(kind, addition, jepId)) {
+                matched.addAll(filter.targets);
+            }
+        }
+    }
+
+    private static Pattern compilePattern(String url, String pattern) {
+        try {
+            return Pattern.compile(pattern);
+        } catch (PatternSyntaxException ex) {
+            throw new IllegalArgumentException("Invalid jepPattern for subscription " + url, ex);
+        }
+    }
+
+    private enum Kind {
+        LISTING,
+        JEP,
+        WATCH
+    }
+
+    private record FilterKey(boolean listing, boolean watches, boolean additionsOnly, @Nullable String jepPattern) { }
+
+    private static class Filter {
+
+        private final FilterKey key;
+        @Nullable
+        private final Pattern pattern;
+        private final Set<String> targets = new LinkedHashSet<>();
+
+        private Filter(FilterKey key, @Nullable Pattern pattern) {
+            this.key = key;
+            this.pattern = pattern;
+        }
+
+        private boolean matches(Kind kind, boolean addition, @Nullable String jepId) {
+            if (key.additionsOnly && !addition) return false;
+
+            return switch (kind) {
+                case LISTING -> key.listing;
+                case WATCH -> key.watches;
+                case JEP -> pattern == null || jepId == null || pattern.matcher(jepId).matches();
+            };
+        }
+    }
+
+    private static class Builder {
+
+        private final List<ProjectListChange> listChanges = new ArrayList<>();
+        private final Map<String, List<JEPChange>> jepChanges = new LinkedHashMap<>();
+        private final List<JEPMove> jepMoves = new ArrayList<>();
+        private final List<PageChange> pageChanges = new ArrayList<>();
+    }
+}
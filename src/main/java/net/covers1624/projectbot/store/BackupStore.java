@@ -0,0 +1,263 @@
+package net.covers1624.projectbot.store;
+
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import net.covers1624.projectbot.Config;
+import net.covers1624.projectbot.util.FileUtils;
+import net.covers1624.quack.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A content-addressed store of archived page bodies.
+ * <p>
+ * Each unique page body is stored once, gzipped, under {@code objects/} keyed by
+ * its SHA-256 hash. {@code index.log} records each (time, page, hash) backup as a json
+ * line, oldest first, each new backup is appended. Backups are evicted by the configured
+ * {@link Config.Backups} retention, once over a count or size limit down to
+ * {@value #LOW_WATER} of it, so the index is only rewritten every so often. The index is
+ * rewritten before any object is deleted, it never refers to a missing object.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class BackupStore {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new Gson();
+
+    // Once over the count or size limit, evict down to this fraction of it.
+    private static final double LOW_WATER = 0.9;
+
+    private final Path dir;
+    private final Path indexFile;
+    private final Config.Backups retention;
+
+    // All backups, oldest first.
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Integer> refCounts = new HashMap<>();
+    private final Map<String, Long> objectSizes = new HashMap<>();
+    private long totalBytes;
+
+    public BackupStore(Path dir, Config.Backups retention) {
+        this.dir = dir;
+        this.retention = retention;
+        indexFile = dir.resolve("index.log");
+        loadIndex();
+        for (Entry entry : entries) {
+            addRef(entry.hash);
+        }
+    }
+
+    /**
+     * Archive a page body.
+     *
+     * @param page The page the body is for. Either a release or {@code list} for the Project listing.
+     * @param time The time of the backup.
+     * @param html The page body.
+     */
+    public synchronized void store(String page, Instant time, String html) throws IOException {
+        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+        String hash = Hashing.sha256().hashBytes(bytes).toString();
+
+        Path object = getObject(hash);
+        if (Files.notExists(object)) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(bytes.length / 4);
+            try (GZIPOutputStream os = new GZIPOutputStream(bos)) {
+                os.write(bytes);
+            }
+            FileUtils.writeAtomic(object, bos.toByteArray());
+        }
+
+        Entry entry = new Entry();
+        entry.time = time.toEpochMilli();
+        entry.page = page;
+        entry.hash = hash;
+        entries.add(entry);
+        addRef(hash);
+
+        List<String> unreferenced = evict(time);
+        if (unreferenced == null) {
+            appendIndex(entry);
+            return;
+        }
+        // Index first, a crash before the deletes only leaves unreferenced objects behind.
+        rewriteIndex();
+        for (String unused : unreferenced) {
+            LOGGER.debug("Evicting backup object {}.", unused);
+            Files.deleteIfExists(getObject(unused));
+        }
+    }
+
+    /**
+     * @return A copy of all backups, oldest first.
+     */
+    public synchronized List<Entry> getEntries() {
+        return List.copyOf(entries);
+    }
+
+    /**
+     * Read a stored page body.
+     *
+     * @param hash The hash of the body.
+     * @return The page body.
+     */
+    public String read(String hash) throws IOException {
+        try (InputStream is = new GZIPInputStream(Files.newInputStream(getObject(hash)))) {
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // Returns the objects no longer referenced, or null if nothing was evicted.
+    @Nullable
+    private List<String> evict(Instant now) {
+        long minTime = retention.maxAgeDays > 0 ? now.minus(Duration.ofDays(retention.maxAgeDays)).toEpochMilli() : Long.MIN_VALUE;
+        boolean overCount = retention.maxCount > 0 && entries.size() > retention.maxCount;
+        boolean overBytes = retention.maxBytes > 0 && totalBytes > retention.maxBytes;
+        if (!overCount && !overBytes && entries.get(0).time >= minTime) return null;
+
+        long maxCount = overCount ? (long) (retention.maxCount * LOW_WATER) : retention.maxCount;
+        long maxBytes = overBytes ? (long) (retention.maxBytes * LOW_WATER) : retention.maxBytes;
+        List<String> unreferenced = new ArrayList<>();
+        // Always keep the newest backup, no matter how large.
+        while (entries.size() > 1) {
+            Entry oldest = entries.get(0);
+            boolean evict = oldest.time < minTime
+                    || maxCount > 0 && entries.size() > maxCount
+                    || maxBytes > 0 && totalBytes > maxBytes;
+            if (!evict) break;
+
+            entries.remove(0);
+            if (removeRef(oldest.hash)) {
+                unreferenced.add(oldest.hash);
+            }
+        }
+        return unreferenced;
+    }
+
+    private void addRef(String hash) {
+        int count = refCounts.merge(hash, 1, Integer::sum);
+        if (count == 1) {
+            long size = getSize(hash);
+            objectSizes.put(hash, size);
+            totalBytes += size;
+        }
+    }
+
+    // Returns true if nothing references the object anymore.
+    private boolean removeRef(String hash) {
+        int count = refCounts.merge(hash, -1, Integer::sum);
+        if (count > 0) return false;
+
+        refCounts.remove(hash);
+        Long size = objectSizes.remove(hash);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        return true;
+    }
+
+    private void appendIndex(Entry entry) throws IOException {
+        byte[] bytes = (GSON.toJson(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(IOUtils.makeParents(indexFile), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    private void rewriteIndex() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Entry entry : entries) {
+            sb.append(GSON.toJson(entry)).append('\n');
+        }
+        FileUtils.writeAtomic(indexFile, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long getSize(String hash) {
+        try {
+            return Files.size(getObject(hash));
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    private Path getObject(String hash) {
+        return dir.resolve("objects/" + hash.substring(0, 2) + "/" + hash + ".html.gz");
+    }
+
+    private void loadIndex() {
+        if (Files.notExists(indexFile)) return;
+
+        try {
+            if (loadLog()) {
+                // Torn or corrupt lines, most likely a crash mid append. Rewrite without them.
+                rewriteIndex();
+            }
+        } catch (IOException | JsonParseException ex) {
+            LOGGER.warn("Failed to read backup index {}. Starting fresh.", indexFile, ex);
+            entries.clear();
+        }
+    }
+
+    // Returns true if any lines had to be skipped.
+    private boolean loadLog() throws IOException {
+        boolean skipped = false;
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String str;
+            while ((str = reader.readLine()) != null) {
+                if (str.isBlank()) continue;
+                try {
+                    Entry entry = GSON.fromJson(str, Entry.class);
+                    if (entry == null || entry.page == null || entry.hash == null) throw new JsonParseException("Missing fields.");
+                    entries.add(entry);
+                } catch (JsonParseException ex) {
+                    LOGGER.warn("Skipping unreadable backup index entry.", ex);
+                    skipped = true;
+                }
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * A single backup.
+     */
+    public static class Entry {
+
+        /**
+         * The time of the backup, in epoch milliseconds.
+         */
+        public long time;
+        /**
+         * The page the backup is for. Either a release or {@code list} for the Project listing.
+         */
+        public String page;
+        /**
+         * The SHA-256 hash of the stored page body.
+         */
+        public String hash;
+    }
+}
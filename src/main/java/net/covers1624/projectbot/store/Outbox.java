@@ -0,0 +1,336 @@
+package net.covers1624.projectbot.store;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import net.covers1624.projectbot.checker.ChangeBatch;
+import net.covers1624.projectbot.util.FileUtils;
+import net.covers1624.quack.gson.JsonUtils;
+import net.covers1624.quack.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A durable, append-only log of detected changes waiting to be delivered.
+ * <p>
+ * Each {@link ChangeBatch} is appended to {@code outbox.log} as a single json line with
+ * an increasing sequence number, and synced to disk before {@link #append} returns.
+ * {@code cursors.json} records the last sequence number delivered to each target.
+ * Entries delivered to every target are dropped by {@link #compact}. If {@code cursors.json}
+ * is missing or unreadable, targets restart from the oldest entry still in the log, entries
+ * may be delivered twice but are never skipped.
+ * <p>
+ * Messages a target permanently rejected are recorded in {@code dead-letters.log}, one json line each.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class Outbox {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(ChangeBatch.class, new ChangeBatch.Adapter())
+            .create();
+
+    private final Path logFile;
+    private final Path cursorFile;
+    private final Path deadLetterFile;
+
+    private final Cursors cursors;
+    // Entries not yet delivered to every target, in sequence order.
+    private final List<Entry> entries = new ArrayList<>();
+    // If cursors has changes not yet written.
+    private boolean dirty;
+    // The cursor targets without one start at, until cursors are first written.
+    // Before the oldest entry if cursors were lost, otherwise the end of the log.
+    @Nullable
+    private Long startCursor;
+
+    public Outbox(Path dir) throws IOException {
+        logFile = dir.resolve("outbox.log");
+        cursorFile = dir.resolve("cursors.json");
+        deadLetterFile = dir.resolve("dead-letters.log");
+        Cursors loaded = loadCursors(cursorFile);
+        cursors = loaded != null ? loaded : new Cursors();
+        if (loadLog()) {
+            // Torn or corrupt lines, most likely a crash mid append. Rewrite without them.
+            rewriteLog();
+        }
+        if (loaded == null && !entries.isEmpty()) {
+            startCursor = entries.get(0).seq - 1;
+        }
+    }
+
+    /**
+     * Durably append a batch of changes.
+     *
+     * @param batch The changes.
+     * @return The appended entry.
+     */
+    public synchronized Entry append(ChangeBatch batch) throws IOException {
+        Line line = new Line();
+        line.seq = cursors.lastSeq + 1;
+        line.batch = batch;
+        appendLine(logFile, GSON.toJson(line));
+
+        cursors.lastSeq = line.seq;
+        Entry entry = new Entry(line.seq, batch);
+        entries.add(entry);
+        return entry;
+    }
+
+    /**
+     * Give a cursor to every target which doesn't have one yet, starting at the end of the log.
+     * If the cursors were lost, they instead start from the oldest entry still in the log.
+     * <p>
+     * Must be called with the configured targets before anything is appended, so new
+     * targets are sent what comes next, but nothing appended before they were added.
+     *
+     * @param targets The targets.
+     */
+    public synchronized void addTargets(Collection<String> targets) throws IOException {
+        for (String target : targets) {
+            if (!cursors.delivered.containsKey(target)) {
+                cursors.delivered.put(target, newCursor());
+                dirty = true;
+            }
+        }
+        if (dirty) {
+            writeCursors();
+        }
+    }
+
+    /**
+     * Get the last sequence number delivered to the given target.
+     * <p>
+     * Targets not given to {@link #addTargets} start from the end of the log,
+     * they are not sent anything appended before they were added.
+     *
+     * @param target The target.
+     * @return The sequence number.
+     */
+    public synchronized long getCursor(String target) {
+        Long cursor = cursors.delivered.get(target);
+        if (cursor == null) {
+            cursor = newCursor();
+            cursors.delivered.put(target, cursor);
+            dirty = true;
+        }
+        return cursor;
+    }
+
+    /**
+     * Get the entries after the given sequence number.
+     *
+     * @param cursor The sequence number, usually from {@link #getCursor}.
+     * @param max    The maximum number of entries to return.
+     * @return The entries, in sequence order.
+     */
+    public synchronized List<Entry> getPending(long cursor, int max) {
+        List<Entry> pending = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (pending.size() >= max) break;
+            if (entry.seq > cursor) {
+                pending.add(entry);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Record that every entry up to and including the given sequence
+     * number has been delivered to the given target.
+     *
+     * @param target The target.
+     * @param seq    The sequence number.
+     */
+    public synchronized void markDelivered(String target, long seq) throws IOException {
+        long cursor = cursors.delivered.getOrDefault(target, 0L);
+        if (seq <= cursor) return;
+
+        cursors.delivered.put(target, seq);
+        cursors.failingSince.remove(target);
+        writeCursors();
+    }
+
+    /**
+     * Record that delivering to the given target failed, without moving its cursor.
+     *
+     * @param target The target.
+     * @param now    The current time, in epoch milliseconds.
+     * @return When delivery to the target first failed since its cursor last moved, in epoch milliseconds.
+     */
+    public synchronized long recordFailure(String target, long now) throws IOException {
+        Long since = cursors.failingSince.get(target);
+        if (since != null) return since;
+
+        cursors.failingSince.put(target, now);
+        writeCursors();
+        return now;
+    }
+
+    /**
+     * Durably record a message a target permanently rejected.
+     *
+     * @param seq     The sequence number of the last entry the message was made from.
+     * @param reason  Why it was rejected.
+     * @param payload The message json.
+     */
+    public synchronized void recordDeadLetter(long seq, String reason, String payload) throws IOException {
+        DeadLetter letter = new DeadLetter();
+        letter.time = System.currentTimeMillis();
+        letter.seq = seq;
+        letter.reason = reason;
+        letter.payload = payload;
+        appendLine(deadLetterFile, GSON.toJson(letter));
+    }
+
+    /**
+     * Drop every entry delivered to all the given targets, and forget about any other targets.
+     *
+     * @param targets The current targets.
+     */
+    public synchronized void compact(Collection<String> targets) throws IOException {
+        long minCursor = cursors.lastSeq;
+        for (String target : targets) {
+            minCursor = Math.min(minCursor, getCursor(target));
+        }
+        dirty |= cursors.delivered.keySet().retainAll(targets);
+        dirty |= cursors.failingSince.keySet().retainAll(targets);
+
+        int count = 0;
+        while (count < entries.size() && entries.get(count).seq <= minCursor) {
+            count++;
+        }
+        if (count == 0) {
+            if (dirty) {
+                writeCursors();
+            }
+            return;
+        }
+
+        entries.subList(0, count).clear();
+        // Cursors first, the sequence number must survive the log being emptied.
+        writeCursors();
+        rewriteLog();
+    }
+
+    /**
+     * @return The number of entries not yet delivered to every target.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Returns true if any lines had to be skipped.
+    private boolean loadLog() throws IOException {
+        if (Files.notExists(logFile)) return false;
+
+        boolean skipped = false;
+        try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+            String str;
+            while ((str = reader.readLine()) != null) {
+                if (str.isBlank()) continue;
+                try {
+                    Line line = GSON.fromJson(str, Line.class);
+                    if (line == null || line.batch == null) throw new JsonParseException("Missing batch.");
+                    entries.add(new Entry(line.seq, line.batch));
+                    cursors.lastSeq = Math.max(cursors.lastSeq, line.seq);
+                } catch (JsonParseException ex) {
+                    LOGGER.warn("Skipping unreadable outbox entry.", ex);
+                    skipped = true;
+                }
+            }
+        }
+        return skipped;
+    }
+
+    private static void appendLine(Path file, String line) throws IOException {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(IOUtils.makeParents(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    private long newCursor() {
+        return startCursor != null ? startCursor : cursors.lastSeq;
+    }
+
+    private void writeCursors() throws IOException {
+        FileUtils.writeJsonAtomic(GSON, cursorFile, cursors);
+        startCursor = null;
+        dirty = false;
+    }
+
+    private void rewriteLog() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Entry entry : entries) {
+            Line line = new Line();
+            line.seq = entry.seq;
+            line.batch = entry.batch;
+            sb.append(GSON.toJson(line)).append('\n');
+        }
+        FileUtils.writeAtomic(logFile, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Nullable
+    private static Cursors loadCursors(Path cursorFile) {
+        if (!Files.exists(cursorFile)) return null;
+
+        try {
+            return JsonUtils.parse(GSON, cursorFile, Cursors.class);
+        } catch (IOException | JsonParseException ex) {
+            LOGGER.warn("Failed to read outbox cursors {}. Resending everything still in the outbox.", cursorFile, ex);
+            return null;
+        }
+    }
+
+    private static class Line {
+
+        public long seq;
+        public ChangeBatch batch;
+    }
+
+    private static class DeadLetter {
+
+        /**
+         * When the message was rejected, in epoch milliseconds.
+         */
+        public long time;
+        public long seq;
+        public String reason;
+        public String payload;
+    }
+
+    private static class Cursors {
+
+        public long lastSeq;
+        public Map<String, Long> delivered = new HashMap<>();
+        /**
+         * When delivery to each target started failing at its current cursor, in epoch milliseconds.
+         */
+        public Map<String, Long> failingSince = new HashMap<>();
+    }
+
+    /**
+     * A single entry in the outbox.
+     *
+     * @param seq   The sequence number of the entry.
+     * @param batch The changes.
+     */
+    public record Entry(long seq, ChangeBatch batch) { }
+}
@@ -0,0 +1,81 @@
+package net.covers1624.projectbot.util;
+
+import com.google.gson.Gson;
+import net.covers1624.quack.io.IOUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Created by covers1624 on 16/10/26.
+ */
+public class FileUtils {
+
+    /**
+     * Write the given object as json to a temporary file next to {@code file},
+     * then atomically move it into place. See {@link #writeAtomic}.
+     *
+     * @param gson The Gson instance to serialize with.
+     * @param file The file to write.
+     * @param obj  The object to write.
+     */
+    public static void writeJsonAtomic(Gson gson, Path file, Object obj) throws IOException {
+        writeAtomic(file, gson.toJson(obj).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write the given bytes to a temporary file next to {@code file},
+     * then atomically move it into place.
+     * <p>
+     * The temporary file is synced before the move, and the directory after it, so once
+     * this returns the new content survives a crash or power loss.
+     *
+     * @param file  The file to write.
+     * @param bytes The bytes to write.
+     */
+    public static void writeAtomic(Path file, byte[] bytes) throws IOException {
+        Path tmp = tempFile(file);
+        try (FileChannel channel = FileChannel.open(IOUtils.makeParents(tmp), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            // Otherwise the move can reach the disk before the content, leaving an empty file.
+            channel.force(true);
+        }
+        moveAtomic(tmp, file);
+    }
+
+    /**
+     * Atomically replace {@code file} with {@code tmp}, syncing the directory afterwards.
+     *
+     * @param tmp  The temporary file, usually from {@link #tempFile}.
+     * @param file The destination.
+     */
+    public static void moveAtomic(Path tmp, Path file) throws IOException {
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(file.toAbsolutePath().getParent());
+    }
+
+    // Makes a rename durable. Not every platform can open a directory, those don't need it.
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * @param file The file.
+     * @return The temporary file to write before moving into {@code file}.
+     */
+    public static Path tempFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+}
@@ -0,0 +1,14 @@
+package net.covers1624.projectbot.watch;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A single entry added, removed or changed on a {@link WatchedPage}.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ *
+ * @param key  The entry key.
+ * @param from The old value, {@code null} if the entry was added.
+ * @param to   The new value, {@code null} if the entry was removed.
+ */
+public record EntryChange(String key, @Nullable String from, @Nullable String to) { }
@@ -0,0 +1,19 @@
+package net.covers1624.projectbot.watch;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Extracts the entries a {@link WatchedPage} tracks from a page.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+@FunctionalInterface
+public interface Extractor {
+
+    /**
+     * @param html    The page.
+     * @param baseUri The page url.
+     * @return The entries, key to value, in page order.
+     */
+    LinkedHashMap<String, String> extract(String html, String baseUri);
+}
@@ -0,0 +1,14 @@
+package net.covers1624.projectbot.watch;
+
+import java.util.List;
+
+/**
+ * The changes to one of the configured extra watched pages.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ *
+ * @param page    The name of the watch.
+ * @param url     The page url.
+ * @param changes The changed entries.
+ */
+public record PageChange(String page, String url, List<EntryChange> changes) { }
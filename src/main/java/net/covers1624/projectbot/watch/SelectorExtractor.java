@@ -0,0 +1,105 @@
+package net.covers1624.projectbot.watch;
+
+import net.covers1624.projectbot.Config;
+import org.jetbrains.annotations.Nullable;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+import org.jsoup.select.Selector;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Extracts entries using CSS selectors.
+ * <p>
+ * Selectors are parsed once, when compiled, into Jsoup {@link Evaluator}s
+ * which are reused for every page.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class SelectorExtractor implements Extractor {
+
+    private final Evaluator items;
+    private final Field key;
+    private final Field value;
+
+    private SelectorExtractor(Evaluator items, Field key, Field value) {
+        this.items = items;
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * Compile the selectors of the given watch.
+     *
+     * @param watch The watch.
+     * @return The extractor.
+     * @throws IllegalArgumentException If a selector is invalid.
+     */
+    public static SelectorExtractor compile(Config.Watch watch) {
+        if (watch.items == null) throw new IllegalArgumentException("Watch " + watch.name + " is missing an items selector.");
+
+        return new SelectorExtractor(
+                parse(watch, watch.items),
+                new Field(watch.key != null ? parse(watch, watch.key) : null, watch.keyAttr),
+                new Field(watch.value != null ? parse(watch, watch.value) : null, watch.valueAttr)
+        );
+    }
+
+    /**
+     * Parse a CSS selector.
+     *
+     * @param query The selector.
+     * @return The evaluator.
+     * @throws IllegalArgumentException If the selector is invalid.
+     */
+    public static Evaluator parse(String query) {
+        try {
+            return QueryParser.parse(query);
+        } catch (Selector.SelectorParseException ex) {
+            throw new IllegalArgumentException("Invalid selector: " + query, ex);
+        }
+    }
+
+    private static Evaluator parse(Config.Watch watch, String query) {
+        try {
+            return parse(query);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid selector for watch " + watch.name, ex);
+        }
+    }
+
+    @Override
+    public LinkedHashMap<String, String> extract(String html, String baseUri) {
+        Document document = Jsoup.parse(html, baseUri);
+        LinkedHashMap<String, String> entries = new LinkedHashMap<>();
+        for (Element item : document.select(items)) {
+            String key = this.key.get(item);
+            if (key == null || key.isEmpty()) continue;
+
+            String value = this.value.get(item);
+            // The first occurrence of a key wins.
+            entries.putIfAbsent(key, value != null ? value : "");
+        }
+        return entries;
+    }
+
+    /**
+     * Where in an item a key or value comes from.
+     *
+     * @param selector The element within the item, {@code null} for the item itself.
+     * @param attr     The attribute of the element, {@code null} for its text.
+     */
+    private record Field(@Nullable Evaluator selector, @Nullable String attr) {
+
+        @Nullable
+        private String get(Element item) {
+            Element element = selector != null ? item.selectFirst(selector) : item;
+            if (element == null) return null;
+
+            return attr != null ? element.attr(attr).trim() : element.text();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package net.covers1624.projectbot.watch;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Sets;
+import net.covers1624.projectbot.checker.PageFetcher;
+import net.covers1624.projectbot.checker.PageState;
+import net.covers1624.projectbot.http.UpstreamClient;
+import net.covers1624.projectbot.metrics.Counter;
+import net.covers1624.projectbot.metrics.Metrics;
+import net.covers1624.projectbot.metrics.PhaseTimers;
+import net.covers1624.projectbot.store.BackupStore;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A page watched for changes to the entries on it.
+ * <p>
+ * Each check fetches the page conditionally, skips parsing if the content is byte-identical
+ * to the last snapshot, otherwise extracts the entries with the page's {@link Extractor} and
+ * diffs them against the last snapshot. The new snapshot is only persisted by {@link #commit},
+ * once the changes have been recorded somewhere durable.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class WatchedPage {
+
+    // The same entries appear on many pages, and again in every snapshot, so their strings are shared.
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+
+    private static final Counter UNCHANGED = Metrics.counter("projectbot_unchanged_total", "Page fetches whose content matched the last snapshot.");
+
+    // Only read to seed snapshots written before entries were stored.
+    private final Path prev;
+    private final String name;
+    private final String url;
+    private final Extractor extractor;
+    @Nullable
+    private final BackupStore backupStore;
+    private final PageFetcher fetcher;
+    private final PhaseTimers timers;
+
+    // The entries from the last committed snapshot.
+    @Nullable
+    private Map<String, String> entries;
+    // The snapshot from the last check, waiting to be committed.
+    @Nullable
+    private Pending pending;
+
+    /**
+     * @param cacheDir    The directory to store the page's snapshot in.
+     * @param name        The name of the page, used for metrics and archived bodies.
+     * @param url         The page url.
+     * @param extractor   Extracts the entries from the page.
+     * @param backupStore Where to archive the page body each time it changes, if anywhere.
+     * @param upstream    The client to fetch the page with.
+     */
+    public WatchedPage(Path cacheDir, String name, String url, Extractor extractor, @Nullable BackupStore backupStore, UpstreamClient upstream) {
+        prev = cacheDir.resolve("prev.html");
+        this.name = name;
+        this.url = url;
+        this.extractor = extractor;
+        this.backupStore = backupStore;
+        fetcher = new PageFetcher(cacheDir, upstream);
+        timers = PhaseTimers.forPage(name);
+    }
+
+    /**
+     * Check the page for changes.
+     * <p>
+     * The new snapshot is not persisted until {@link #commit()} is called. Checking
+     * again before committing will detect the same changes.
+     *
+     * @param currTime The time of the check.
+     * @return The new entries and the changes, or {@code null} if the page is unchanged.
+     */
+    @Nullable
+    public Update check(Date currTime) throws IOException {
+        pending = null;
+        Map<String, String> oldEntries = getEntries();
+        boolean first = entries == null;
+
+        long start = System.nanoTime();
+        // Only make the request conditional if we have something to compare against.
+        PageFetcher.Page page = fetcher.fetch(url, !first);
+        timers.fetch().recordSince(start);
+        if (page == null) return null;
+
+        PageState state = page.state();
+        // Byte-identical to the last page, nothing to parse.
+        if (!first && fetcher.isSameContent(state)) {
+            UNCHANGED.inc();
+            state.entries = fetcher.getState().entries;
+            pending = new Pending(state, oldEntries, null, currTime);
+            return null;
+        }
+
+        start = System.nanoTime();
+        LinkedHashMap<String, String> newEntries = intern(extractor.extract(page.html(), url));
+        timers.parse().recordSince(start);
+
+        start = System.nanoTime();
+        List<EntryChange> changes = diff(oldEntries, newEntries);
+        timers.diff().recordSince(start);
+
+        state.entries = newEntries;
+        Map<String, String> view = Collections.unmodifiableMap(newEntries);
+        boolean backup = !changes.isEmpty() || first;
+        pending = new Pending(state, view, backup ? page.html() : null, currTime);
+        return new Update(view, changes);
+    }
+
+    /**
+     * Persist the snapshot from the last {@link #check} call, if any.
+     */
+    public void commit() throws IOException {
+        Pending pending = this.pending;
+        if (pending == null) return;
+
+        if (backupStore != null && pending.html != null) {
+            backupStore.store(name, pending.time.toInstant(), pending.html);
+        }
+        long start = System.nanoTime();
+        fetcher.commit(pending.state);
+        timers.commit().recordSince(start);
+        entries = pending.entries;
+        this.pending = null;
+    }
+
+    /**
+     * @return If there is a committed snapshot to diff against.
+     */
+    public boolean hasSnapshot() throws IOException {
+        getEntries();
+        return entries != null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return The entries from the last committed snapshot, in page order.
+     */
+    public Map<String, String> getEntries() throws IOException {
+        if (entries != null) return entries;
+
+        Map<String, String> stored = fetcher.getState().entries;
+        if (stored != null) {
+            entries = Collections.unmodifiableMap(intern(stored));
+        } else if (Files.exists(prev)) {
+            // Snapshot predates stored entries, seed it from the old prev.html.
+            entries = Collections.unmodifiableMap(intern(extractor.extract(Files.readString(prev), url)));
+        }
+        return entries != null ? entries : Map.of();
+    }
+
+    /**
+     * Compute the entries added, removed and changed between two snapshots.
+     *
+     * @param oldEntries The old entries.
+     * @param newEntries The new entries.
+     * @return The changes, additions first, then removals, then changed values.
+     */
+    public static List<EntryChange> diff(Map<String, String> oldEntries, Map<String, String> newEntries) {
+        List<EntryChange> changes = new ArrayList<>();
+        for (String key : Sets.difference(newEntries.keySet(), oldEntries.keySet())) {
+            changes.add(new EntryChange(key, null, newEntries.get(key)));
+        }
+        for (String key : Sets.difference(oldEntries.keySet(), newEntries.keySet())) {
+            changes.add(new EntryChange(key, oldEntries.get(key), null));
+        }
+        for (String key : Sets.intersection(newEntries.keySet(), oldEntries.keySet())) {
+            String oldValue = oldEntries.get(key);
+            String newValue = newEntries.get(key);
+            if (!newValue.equals(oldValue)) {
+                changes.add(new EntryChange(key, oldValue, newValue));
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * @param str The string.
+     * @return The shared instance of the string.
+     */
+    public static String intern(String str) {
+        return STRINGS.intern(str);
+    }
+
+    private static LinkedHashMap<String, String> intern(Map<String, String> entries) {
+        LinkedHashMap<String, String> interned = new LinkedHashMap<>();
+        entries.forEach((key, value) -> interned.put(STRINGS.intern(key), STRINGS.intern(value)));
+        return interned;
+    }
+
+    /**
+     * The result of a check which found a new page.
+     *
+     * @param entries The new entries, in page order.
+     * @param changes The changes from the last snapshot.
+     */
+    public record Update(Map<String, String> entries, List<EntryChange> changes) { }
+
+    private record Pending(PageState state, Map<String, String> entries, @Nullable String html, Date time) { }
+}
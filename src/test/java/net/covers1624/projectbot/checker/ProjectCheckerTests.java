@@ -0,0 +1,174 @@
+package net.covers1624.projectbot.checker;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks {@link ProjectChecker#scanJEPs} extracts exactly what the Jsoup selectors it mirrors do,
+ * or falls back to Jsoup.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class ProjectCheckerTests {
+
+    private static final String BASE_URI = "https://openjdk.org/projects/jdk/21/";
+
+    @Test
+    public void testFixtures() throws IOException {
+        assertEquals(9, assertParity(fixture("jdk-18.html")).size());
+        assertEquals(15, assertParity(fixture("jdk-21.html")).size());
+    }
+
+    @Test
+    public void testFeatures() {
+        Map<String, String> jeps = assertParity(page("""
+                <h2 id="Features">Features</h2>
+                <blockquote>
+                400:&nbsp;<a href="/jeps/400">UTF-8 by Default</a><br>
+                408:&nbsp;<a href="/jeps/408">Simple Web Server</a><br>
+                </blockquote>
+                <table class="jeps"><tbody><tr><td><a href="/jeps/1">Not this</a></td></tr></tbody></table>
+                """));
+        assertEquals(List.of("400", "408"), List.copyOf(jeps.keySet()));
+    }
+
+    @Test
+    public void testTable() {
+        Map<String, String> jeps = assertParity(page("""
+                <table class="jeps">
+                <tbody>
+                <tr><td>430:</td><td><a href="/jeps/430">String Templates (Preview)</a></td></tr>
+                <tr><td>431:</td><td><a href="/jeps/431">Sequenced Collections</a></td></tr>
+                </tbody>
+                </table>
+                """));
+        assertEquals(Map.of("430", "String Templates (Preview)", "431", "Sequenced Collections"), jeps);
+    }
+
+    @Test
+    public void testTableSections() {
+        // Anchors in the head and foot aren't JEPs, a thead implicitly closes an open tbody.
+        Map<String, String> jeps = assertParity(page("""
+                <table class="jeps">
+                <thead><tr><th><a href="/jeps/0">Index</a></th></tr></thead>
+                <tbody><tr><td><a href="/jeps/430">String Templates</a></td></tr>
+                <tfoot><tr><td><a href="/jeps/1">Footer</a></td></tr></tfoot>
+                </table>
+                """));
+        assertEquals(List.of("430"), List.copyOf(jeps.keySet()));
+    }
+
+    @Test
+    public void testInlineMarkupInAnchors() {
+        Map<String, String> jeps = assertParity(page("""
+                <table class="jeps"><tbody>
+                <tr><td><a href="/jeps/430"><b>String</b> <code>Templates</code> <i>(<em>Preview</em>)</i></a></td></tr>
+                <tr><td><a href="/jeps/431">Sequenced&nbsp;Collections &amp; Friends</a></td></tr>
+                </tbody></table>
+                """));
+        assertEquals("String Templates (Preview)", jeps.get("430"));
+    }
+
+    @Test
+    public void testBreakInAnchors() {
+        Map<String, String> jeps = assertParity(page("""
+                <h2 id="Features">Features</h2>
+                <blockquote>
+                400:&nbsp;<a href="/jeps/400">UTF-8<br>by Default</a><br>
+                408:&nbsp;<a href="/jeps/408">Simple <br/> Web Server</a><br>
+                </blockquote>
+                """));
+        assertEquals("UTF-8 by Default", jeps.get("400"));
+    }
+
+    @Test
+    public void testNoJeps() {
+        // Nothing Jsoup would find either, no need to fall back.
+        assertEquals(Map.of(), ProjectChecker.scanJEPs(page("<p>Nothing to see here.</p>")));
+        assertParity(page("""
+                <h2 id="Features">Features</h2>
+                <blockquote>
+                </blockquote>
+                """));
+    }
+
+    @Test
+    public void testFallbackMissingTbody() {
+        // Jsoup's tree builder inserts the tbody.
+        assertFallback(page("""
+                <table class="jeps">
+                <tr><td><a href="/jeps/430">String Templates</a></td></tr>
+                </table>
+                """), 1);
+    }
+
+    @Test
+    public void testFallbackBlockInAnchor() {
+        assertFallback(page("""
+                <table class="jeps"><tbody>
+                <tr><td><a href="/jeps/430"><div>String Templates</div></a></td></tr>
+                </tbody></table>
+                """), 1);
+    }
+
+    @Test
+    public void testFallbackNestedAnchor() {
+        assertFallback(page("""
+                <table class="jeps"><tbody>
+                <tr><td><a href="/jeps/430">String <a href="/jeps/431">Templates</a></a></td></tr>
+                </tbody></table>
+                """), 2);
+    }
+
+    @Test
+    public void testFallbackHeadingWithoutBlockquote() {
+        assertFallback(page("""
+                <h2 id="Features">Features</h2>
+                <p>To be determined.</p>
+                """), 0);
+    }
+
+    @Test
+    public void testFallbackEmptyTable() {
+        assertFallback(page("""
+                <table class="jeps"><tbody></tbody></table>
+                """), 0);
+    }
+
+    private static Map<String, String> assertParity(String html) {
+        Map<String, ProjectChecker.JEP> scanned = ProjectChecker.scanJEPs(html);
+        assertNotNull(scanned, "Scanner fell back to Jsoup.");
+
+        Map<String, String> parsed = ProjectChecker.toEntries(ProjectChecker.getJEPs(Jsoup.parse(html, BASE_URI)));
+        Map<String, String> entries = ProjectChecker.toEntries(scanned);
+        assertEquals(List.copyOf(parsed.entrySet()), List.copyOf(entries.entrySet()));
+        return entries;
+    }
+
+    private static void assertFallback(String html, int expected) {
+        assertNull(ProjectChecker.scanJEPs(html), "Scanner should have fallen back to Jsoup.");
+
+        Map<String, ProjectChecker.JEP> jeps = ProjectChecker.extractJEPs(html, BASE_URI);
+        assertEquals(ProjectChecker.getJEPs(Jsoup.parse(html, BASE_URI)), jeps);
+        assertEquals(expected, jeps.size());
+    }
+
+    private static String page(String body) {
+        return "<!DOCTYPE html>\n<html><head><title>JDK 21</title></head><body>\n" + body + "</body></html>\n";
+    }
+
+    static String fixture(String name) throws IOException {
+        try (InputStream is = ProjectCheckerTests.class.getResourceAsStream("/fixtures/" + name)) {
+            assertNotNull(is, "Missing fixture: " + name);
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package net.covers1624.projectbot.checker;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks {@link ProjectListChecker#scanVersions} extracts exactly what the Jsoup selectors it mirrors do,
+ * or falls back to Jsoup.
+ * <p>
+ * Created by covers1624 on 16/10/26.
+ */
+public class ProjectListCheckerTests {
+
+    private static final String BASE_URI = "https://openjdk.org/projects/jdk/";
+
+    @Test
+    public void testFixture() throws IOException {
+        Map<String, String> versions = assertParity(ProjectCheckerTests.fixture("jdk-list.html"));
+        assertEquals("in development", versions.get("22"));
+    }
+
+    @Test
+    public void testVersions() {
+        Map<String, String> versions = assertParity(page("""
+                <ul>
+                <li><a href="22/">22</a> (in development)</li>
+                <li><a href="21/">21</a> (GA 2023/09/19)</li>
+                </ul>
+                <ul><li><a href="x/">Not this</a></li></ul>
+                """));
+        assertEquals(List.of("22", "21"), List.copyOf(versions.keySet()));
+        assertEquals("GA 2023/09/19", versions.get("21"));
+    }
+
+    @Test
+    public void testImplicitlyClosedItems() {
+        assertParity(page("""
+                <ul>
+                <li><a href="22/">22</a> (in development)
+                <li><a href="21/">21</a> (GA)
+                </ul>
+                """));
+    }
+
+    @Test
+    public void testInlineMarkup() {
+        Map<String, String> versions = assertParity(page("""
+                <ul>
+                <li><a href="22/"><b>22</b></a> (<i>in</i><br>development)</li>
+                <li><a href="21/">21</a> (GA&nbsp;2023/09/19 &amp; more)</li>
+                </ul>
+                """));
+        assertEquals("in development", versions.get("22"));
+    }
+
+    @Test
+    public void testNoMain() {
+        assertEquals(Map.of(), ProjectListChecker.scanVersions("<html><body><ul><li><a>21</a></li></ul></body></html>"));
+    }
+
+    @Test
+    public void testFallbackNestedList() {
+        assertFallback(page("""
+                <ul>
+                <li><a href="22/">22</a> (in development)<ul><li><a href="22.0.1/">22.0.1</a></li></ul></li>
+                </ul>
+                """));
+    }
+
+    @Test
+    public void testFallbackBlockInItem() {
+        assertFallback(page("""
+                <ul>
+                <li><a href="22/">22</a> <div>(in development)</div></li>
+                </ul>
+                """));
+    }
+
+    @Test
+    public void testFallbackNoList() {
+        assertFallback(page("<p>Nothing here yet.</p>"));
+    }
+
+    @Test
+    public void testItemWithoutElementChild() {
+        // Jsoup throws on these, leave it to do so.
+        assertNull(ProjectListChecker.scanVersions(page("""
+                <ul>
+                <li>22 (in development)</li>
+                </ul>
+                """)));
+    }
+
+    private static Map<String, String> assertParity(String html) {
+        Map<String, ProjectListChecker.ProjectVersion> scanned = ProjectListChecker.scanVersions(html);
+        assertNotNull(scanned, "Scanner fell back to Jsoup.");
+
+        Map<String, String> parsed = ProjectListChecker.toEntries(ProjectListChecker.getVersions(Jsoup.parse(html, BASE_URI)));
+        Map<String, String> entries = ProjectListChecker.toEntries(scanned);
+        assertEquals(List.copyOf(parsed.entrySet()), List.copyOf(entries.entrySet()));
+        return entries;
+    }
+
+    private static void assertFallback(String html) {
+        assertNull(ProjectListChecker.scanVersions(html), "Scanner should have fallen back to Jsoup.");
+        assertEquals(ProjectListChecker.getVersions(Jsoup.parse(html, BASE_URI)), ProjectListChecker.extractVersions(html, BASE_URI));
+    }
+
+    private static String page(String main) {
+        return "<!DOCTYPE html>\n<html><head><title>JDK Project</title></head><body>\n<div id=\"main\">\n" + main + "</div>\n</body></html>\n";
+    }
+}
@@ -0,0 +1,160 @@
+package net.covers1624.projectbot.discord;
+
+import net.covers1624.projectbot.discord.DiscordWebhook.Embed;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.covers1624.projectbot.discord.MessagePacker.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Created by covers1624 on 16/10/26.
+ */
+public class MessagePackerTests {
+
+    private static final String URL = "https://openjdk.org/projects/jdk/21/";
+
+    @Test
+    public void testSmallSectionsShareMessage() {
+        List<DiscordWebhook> messages = packer()
+                .addSection("JDK 21", URL, "Added:", List.of("430: String Templates"))
+                .addSection("JDK 22", URL, "Removed:", List.of("431: Sequenced Collections"))
+                .pack();
+
+        assertEquals(1, messages.size());
+        List<Embed> embeds = messages.get(0).getEmbeds();
+        assertEquals(2, embeds.size());
+        assertEquals("Added:\n430: String Templates", embeds.get(0).getDescription());
+    }
+
+    @Test
+    public void testEmbedsAtLimit() {
+        MessagePacker packer = packer();
+        for (int i = 0; i < MAX_EMBEDS; i++) {
+            packer.addSection("JDK " + i, URL, "Added:", List.of());
+        }
+        assertEquals(1, packer.pack().size());
+
+        packer.addSection("JDK 10", URL, "Added:", List.of());
+        List<DiscordWebhook> messages = packer.pack();
+        assertEquals(2, messages.size());
+        assertEquals(MAX_EMBEDS, messages.get(0).getEmbeds().size());
+        assertEquals(1, messages.get(1).getEmbeds().size());
+    }
+
+    @Test
+    public void testDescriptionAtLimit() {
+        // Exactly the limit with the newline between them.
+        String first = "a".repeat(2047);
+        String second = "b".repeat(MAX_DESCRIPTION - first.length() - 1);
+        List<Embed> embeds = embeds(packer().addSection("JDK 21", URL, "", List.of(first, second)).pack());
+        assertEquals(1, embeds.size());
+        assertEquals(MAX_DESCRIPTION, embeds.get(0).getDescription().length());
+
+        embeds = embeds(packer().addSection("JDK 21", URL, "", List.of(first, second, "c")).pack());
+        assertEquals(2, embeds.size());
+        assertEquals(first + "\n" + second, embeds.get(0).getDescription());
+        assertEquals("c", embeds.get(1).getDescription());
+        assertEquals("JDK 21 (continued)", embeds.get(1).getTitle());
+    }
+
+    @Test
+    public void testSingleLineAtLimit() {
+        String line = "a".repeat(MAX_DESCRIPTION);
+        List<Embed> embeds = embeds(packer().addSection("JDK 21", URL, "", List.of(line)).pack());
+
+        assertEquals(1, embeds.size());
+        assertEquals(line, embeds.get(0).getDescription());
+    }
+
+    @Test
+    public void testLineOverLimit() {
+        String line = "a".repeat(MAX_DESCRIPTION + 1000);
+        List<Embed> embeds = embeds(packer().addSection("JDK 21", URL, "Added:", List.of(line)).pack());
+
+        assertEquals(2, embeds.size());
+        assertEquals("Added:", embeds.get(0).getDescription());
+        String desc = embeds.get(1).getDescription();
+        assertEquals(MAX_DESCRIPTION, desc.length());
+        assertTrue(desc.endsWith("..."));
+    }
+
+    @Test
+    public void testMessageCharsAtLimit() {
+        // Title and description count towards the message total.
+        String desc = "a".repeat(MAX_MESSAGE_CHARS / 2 - 1);
+        List<DiscordWebhook> messages = packer()
+                .addSection("A", URL, desc, List.of())
+                .addSection("B", URL, desc, List.of())
+                .pack();
+        assertEquals(1, messages.size());
+        assertEquals(MAX_MESSAGE_CHARS, chars(messages.get(0)));
+
+        messages = packer()
+                .addSection("A", URL, desc, List.of())
+                .addSection("BB", URL, desc, List.of())
+                .pack();
+        assertEquals(2, messages.size());
+    }
+
+    @Test
+    public void testTitlesAbbreviated() {
+        String title = "t".repeat(MAX_TITLE + 50);
+        List<String> lines = List.of("a".repeat(2000), "b".repeat(3000));
+        List<Embed> embeds = embeds(packer().addSection(title, URL, "", lines).pack());
+
+        assertEquals(2, embeds.size());
+        for (Embed embed : embeds) {
+            assertEquals(MAX_TITLE, embed.getTitle().length());
+        }
+        assertTrue(embeds.get(1).getTitle().endsWith("..."));
+    }
+
+    @Test
+    public void testLimitsHold() {
+        MessagePacker packer = packer();
+        List<String> expected = new ArrayList<>();
+        for (int section = 0; section < 20; section++) {
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                lines.add(section + ": " + "x".repeat((section * 37 + i * 101) % 700));
+            }
+            packer.addSection("JDK " + section, URL, "Section " + section, lines);
+            expected.add("Section " + section);
+            expected.addAll(lines);
+        }
+
+        List<String> actual = new ArrayList<>();
+        for (DiscordWebhook message : packer.pack()) {
+            assertTrue(message.getEmbeds().size() <= MAX_EMBEDS);
+            assertTrue(chars(message) <= MAX_MESSAGE_CHARS);
+            for (Embed embed : message.getEmbeds()) {
+                assertTrue(embed.getTitle().length() <= MAX_TITLE);
+                assertFalse(embed.getDescription().isEmpty());
+                assertTrue(embed.getDescription().length() <= MAX_DESCRIPTION);
+                actual.addAll(List.of(embed.getDescription().split("\n")));
+            }
+        }
+        // Nothing lost or reordered.
+        assertEquals(expected, actual);
+    }
+
+    private static MessagePacker packer() {
+        return new MessagePacker("OpenJDK", "https://example.com/avatar.png");
+    }
+
+    private static List<Embed> embeds(List<DiscordWebhook> messages) {
+        assertEquals(1, messages.size());
+        return messages.get(0).getEmbeds();
+    }
+
+    private static int chars(DiscordWebhook message) {
+        int chars = 0;
+        for (Embed embed : message.getEmbeds()) {
+            chars += embed.getTitle().length() + embed.getDescription().length();
+        }
+        return chars;
+    }
+}
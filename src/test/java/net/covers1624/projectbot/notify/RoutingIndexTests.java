@@ -0,0 +1,160 @@
+package net.covers1624.projectbot.notify;
+
+import net.covers1624.projectbot.Config;
+import net.covers1624.projectbot.checker.ChangeBatch;
+import net.covers1624.projectbot.checker.JepTracker.JEPMove;
+import net.covers1624.projectbot.checker.ProjectChecker.JEPChange;
+import net.covers1624.projectbot.checker.ProjectListChecker.ProjectListChange;
+import net.covers1624.projectbot.watch.EntryChange;
+import net.covers1624.projectbot.watch.PageChange;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Created by covers1624 on 16/10/26.
+ */
+public class RoutingIndexTests {
+
+    private static final ProjectListChange NEW_RELEASE = new ProjectListChange("23", null, "in development");
+    private static final ProjectListChange RELEASED = new ProjectListChange("21", "in development", "GA");
+    private static final JEPChange ADDED_430 = new JEPChange("430", "String Templates", true);
+    private static final JEPChange REMOVED_431 = new JEPChange("431", "Sequenced Collections", false);
+    private static final JEPMove MOVED_432 = new JEPMove("432", "Record Patterns", "21", "22");
+    private static final EntryChange ENTRY_ADDED = new EntryChange("a", null, "A");
+    private static final EntryChange ENTRY_REMOVED = new EntryChange("b", "B", null);
+    private static final PageChange PAGE = new PageChange("ea", "https://example.com/ea", List.of(ENTRY_ADDED, ENTRY_REMOVED));
+
+    private static final ChangeBatch BATCH = new ChangeBatch(
+            1000,
+            List.of(NEW_RELEASE, RELEASED),
+            Map.of("21", List.of(ADDED_430, REMOVED_431)),
+            List.of(MOVED_432),
+            List.of(PAGE)
+    );
+
+    @Test
+    public void testWebhooksGetEverything() {
+        RoutingIndex index = RoutingIndex.compile(List.of("a", "b"), List.of());
+        Map<String, ChangeBatch> routed = index.route(BATCH);
+
+        assertEquals(Set.of("a", "b"), routed.keySet());
+        assertEquals(BATCH, routed.get("a"));
+    }
+
+    @Test
+    public void testTargets() {
+        RoutingIndex index = RoutingIndex.compile(List.of("a", "b"), List.of(sub("c", "21"), sub("a", "22"), sub("c", "22")));
+        assertEquals(List.of("a", "b", "c"), List.copyOf(index.getTargets()));
+    }
+
+    @Test
+    public void testReleases() {
+        RoutingIndex index = RoutingIndex.compile(List.of(), List.of(sub("a", "21"), sub("b", "23"), sub("c", "20")));
+        Map<String, ChangeBatch> routed = index.route(BATCH);
+
+        ChangeBatch a = routed.get("a");
+        assertEquals(List.of(RELEASED), a.listChanges());
+        assertEquals(Map.of("21", List.of(ADDED_430, REMOVED_431)), a.jepChanges());
+        // Moved away from 21.
+        assertEquals(List.of(MOVED_432), a.jepMoves());
+        assertEquals(List.of(), a.pageChanges());
+
+        ChangeBatch b = routed.get("b");
+        assertEquals(List.of(NEW_RELEASE), b.listChanges());
+        assertTrue(b.jepChanges().isEmpty());
+        assertTrue(b.jepMoves().isEmpty());
+
+        // Nothing for 20, nothing sent.
+        assertFalse(routed.containsKey("c"));
+    }
+
+    @Test
+    public void testMovesMatchEitherRelease() {
+        RoutingIndex index = RoutingIndex.compile(List.of(), List.of(sub("a", "22")));
+        assertEquals(List.of(MOVED_432), index.route(BATCH).get("a").jepMoves());
+    }
+
+    @Test
+    public void testWatchesMatchReleases() {
+        RoutingIndex index = RoutingIndex.compile(List.of(), List.of(sub("a", "ea")));
+        assertEquals(List.of(PAGE), index.route(BATCH).get("a").pageChanges());
+    }
+
+    @Test
+    public void testAdditionsOnly() {
+        Config.Subscription sub = sub("a");
+        sub.additionsOnly = true;
+        ChangeBatch a = RoutingIndex.compile(List.of(), List.of(sub)).route(BATCH).get("a");
+
+        assertEquals(List.of(NEW_RELEASE), a.listChanges());
+        assertEquals(Map.of("21", List.of(ADDED_430)), a.jepChanges());
+        // A move is an addition to the release it moved to.
+        assertEquals(List.of(MOVED_432), a.jepMoves());
+        // Only the added entries of the page are sent.
+        assertEquals(List.of(new PageChange("ea", "https://example.com/ea", List.of(ENTRY_ADDED))), a.pageChanges());
+    }
+
+    @Test
+    public void testAdditionsOnlyMovedAway() {
+        Config.Subscription sub = sub("a", "21");
+        sub.additionsOnly = true;
+        ChangeBatch a = RoutingIndex.compile(List.of(), List.of(sub)).route(BATCH).get("a");
+
+        assertEquals(List.of(), a.jepMoves());
+    }
+
+    @Test
+    public void testJepPattern() {
+        Config.Subscription sub = sub("a");
+        sub.jepPattern = "43[02]";
+        sub.listing = false;
+        sub.watches = false;
+        ChangeBatch a = RoutingIndex.compile(List.of(), List.of(sub)).route(BATCH).get("a");
+
+        assertEquals(List.of(), a.listChanges());
+        assertEquals(Map.of("21", List.of(ADDED_430)), a.jepChanges());
+        assertEquals(List.of(MOVED_432), a.jepMoves());
+        assertEquals(List.of(), a.pageChanges());
+
+        // Must match the whole id.
+        sub.jepPattern = "43";
+        assertNull(RoutingIndex.compile(List.of(), List.of(sub)).route(BATCH).get("a"));
+    }
+
+    @Test
+    public void testSubscriptionsCombine() {
+        Config.Subscription listing = sub("a");
+        listing.watches = false;
+        listing.jepPattern = "none";
+        Config.Subscription watches = sub("a");
+        watches.listing = false;
+        watches.jepPattern = "none";
+        ChangeBatch a = RoutingIndex.compile(List.of(), List.of(listing, watches)).route(BATCH).get("a");
+
+        assertEquals(List.of(NEW_RELEASE, RELEASED), a.listChanges());
+        assertEquals(List.of(PAGE), a.pageChanges());
+        assertTrue(a.jepChanges().isEmpty());
+    }
+
+    @Test
+    public void testInvalidSubscriptions() {
+        assertThrows(IllegalArgumentException.class, () -> RoutingIndex.compile(List.of(), List.of(sub(null))));
+
+        Config.Subscription sub = sub("a");
+        sub.jepPattern = "[";
+        assertThrows(IllegalArgumentException.class, () -> RoutingIndex.compile(List.of(), List.of(sub)));
+    }
+
+    private static Config.Subscription sub(@Nullable String url, String... releases) {
+        Config.Subscription sub = new Config.Subscription();
+        sub.url = url;
+        sub.releases = releases.length == 0 ? null : List.of(releases);
+        return sub;
+    }
+}
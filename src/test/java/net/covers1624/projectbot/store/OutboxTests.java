@@ -0,0 +1,167 @@
+package net.covers1624.projectbot.store;
+
+import net.covers1624.projectbot.checker.ChangeBatch;
+import net.covers1624.projectbot.checker.ProjectListChecker.ProjectListChange;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Created by covers1624 on 16/10/26.
+ */
+public class OutboxTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testRestart() throws IOException {
+        Outbox outbox = new Outbox(dir);
+        outbox.addTargets(List.of("a"));
+        outbox.append(batch("21"));
+        outbox.append(batch("22"));
+        outbox.append(batch("23"));
+        outbox.markDelivered("a", 2);
+
+        Outbox reopened = new Outbox(dir);
+        assertEquals(3, reopened.size());
+        assertEquals(2, reopened.getCursor("a"));
+        assertEquals(List.of(3L), seqs(reopened.getPending(2, 10)));
+        assertEquals("23", reopened.getPending(2, 10).get(0).batch().listChanges().get(0).version());
+        assertEquals(4, reopened.append(batch("24")).seq());
+    }
+
+    @Test
+    public void testTornTail() throws IOException {
+        Outbox outbox = new Outbox(dir);
+        outbox.append(batch("21"));
+        outbox.append(batch("22"));
+        // A crash part way through appending the third.
+        Files.writeString(dir.resolve("outbox.log"), "{\"seq\":3,\"batch\":{\"ti", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        Outbox reopened = new Outbox(dir);
+        assertEquals(2, reopened.size());
+        assertEquals(3, reopened.append(batch("23")).seq());
+
+        // The torn line was rewritten away, and doesn't hide the new entry.
+        Outbox again = new Outbox(dir);
+        assertEquals(List.of(1L, 2L, 3L), seqs(again.getPending(0, 10)));
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        Outbox outbox = new Outbox(dir);
+        outbox.addTargets(List.of("a", "b"));
+        outbox.append(batch("21"));
+        outbox.append(batch("22"));
+        outbox.append(batch("23"));
+        outbox.markDelivered("a", 3);
+        outbox.markDelivered("b", 1);
+
+        // Only what every target has been sent is dropped.
+        outbox.compact(List.of("a", "b"));
+        assertEquals(2, outbox.size());
+        Outbox reopened = new Outbox(dir);
+        assertEquals(List.of(2L, 3L), seqs(reopened.getPending(1, 10)));
+
+        reopened.markDelivered("b", 3);
+        reopened.compact(List.of("a", "b"));
+        assertEquals(0, reopened.size());
+
+        // Sequence numbers carry on after the log is emptied.
+        Outbox emptied = new Outbox(dir);
+        assertEquals(0, emptied.size());
+        assertEquals(4, emptied.append(batch("24")).seq());
+    }
+
+    @Test
+    public void testCompactionForgetsRemovedTargets() throws IOException {
+        Outbox outbox = new Outbox(dir);
+        outbox.addTargets(List.of("a", "b"));
+        outbox.append(batch("21"));
+        outbox.markDelivered("a", 1);
+
+        outbox.compact(List.of("a"));
+        assertEquals(0, outbox.size());
+    }
+
+    @Test
+    public void testNewTargetsStartAtEnd() throws IOException {
+        Outbox outbox = new Outbox(dir);
+        outbox.addTargets(List.of("a"));
+        outbox.append(batch("21"));
+        outbox.append(batch("22"));
+
+        outbox.addTargets(List.of("a", "b"));
+        assertEquals(0, outbox.getCursor("a"));
+        assertEquals(2, outbox.getCursor("b"));
+    }
+
+    @Test
+    public void testLostCursors() throws IOException {
+        Outbox outbox = new Outbox(dir);
+        outbox.addTargets(List.of("a", "b"));
+        for (int i = 0; i < 5; i++) {
+            outbox.append(batch("2" + i));
+        }
+        outbox.markDelivered("a", 5);
+        outbox.markDelivered("b", 3);
+        outbox.compact(List.of("a", "b"));
+        Files.writeString(dir.resolve("cursors.json"), "{garbage");
+
+        // Everything still in the outbox is sent again, rather than skipped.
+        Outbox reopened = new Outbox(dir);
+        reopened.addTargets(List.of("a", "b"));
+        assertEquals(3, reopened.getCursor("a"));
+        assertEquals(3, reopened.getCursor("b"));
+
+        // Once cursors are written again, new targets start at the end.
+        Outbox again = new Outbox(dir);
+        again.addTargets(List.of("a", "b", "c"));
+        assertEquals(3, again.getCursor("a"));
+        assertEquals(5, again.getCursor("c"));
+    }
+
+    @Test
+    public void testRecordFailure() throws IOException {
+        Outbox outbox = new Outbox(dir);
+        outbox.addTargets(List.of("a"));
+        outbox.append(batch("21"));
+
+        assertEquals(100, outbox.recordFailure("a", 100));
+        assertEquals(100, outbox.recordFailure("a", 200));
+        assertEquals(100, new Outbox(dir).recordFailure("a", 300));
+
+        // Cleared once the cursor moves.
+        outbox.markDelivered("a", 1);
+        assertEquals(400, outbox.recordFailure("a", 400));
+    }
+
+    @Test
+    public void testDeadLetters() throws IOException {
+        Outbox outbox = new Outbox(dir);
+        outbox.recordDeadLetter(1, "Got: 404", "{\"content\":\"a\"}");
+        outbox.recordDeadLetter(2, "Got: 400", "{\"content\":\"b\"}");
+
+        List<String> lines = Files.readAllLines(dir.resolve("dead-letters.log"));
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(1).contains("Got: 400"));
+    }
+
+    private static ChangeBatch batch(String version) {
+        return new ChangeBatch(0, List.of(new ProjectListChange(version, null, "Released")), Map.of(), List.of());
+    }
+
+    private static List<Long> seqs(List<Outbox.Entry> entries) {
+        return entries.stream().map(Outbox.Entry::seq).toList();
+    }
+}